@@ -0,0 +1,211 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * JMH benchmarks for the tree operations of TabManager.
+ * The tabbed pane is never shown, so these run headless.
+ *
+ */
+
+package co.uproot.htabs.bench;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTabbedPane;
+import javax.swing.SwingConstants;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.uproot.htabs.custom.tabbedpane.CustomTabbedPane;
+import co.uproot.htabs.tabmanager.TabManager;
+import co.uproot.htabs.tabmanager.TabManager.Tab;
+import co.uproot.htabs.tabmanager.TabTreeModel;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true" })
+public class TabManagerBenchmark {
+
+  private static final int TAB_BAR_WIDTH = 300;
+  private static final int DEEP_CHAIN_LENGTH = 100;
+  private static final int BUSHY_FAN_OUT = 8;
+
+  @Param({ "100", "1000", "10000" })
+  public int size;
+
+  /*
+   * flat: only root tabs
+   * deep: chains of DEEP_CHAIN_LENGTH nested tabs
+   * bushy: a complete tree where every tab has BUSHY_FAN_OUT children
+   */
+  @Param({ "flat", "deep", "bushy" })
+  public String shape;
+
+  private JTabbedPane tabbedPane;
+  private TabManager tabManager;
+  private List<Tab> tabs;
+  private Tab middleTab;
+  private Tab largestRoot;
+  private Tab lastParent;
+  private Rectangle[] rects;
+
+  @Setup
+  public void setUp() {
+    tabbedPane = new CustomTabbedPane(SwingConstants.LEFT);
+    tabManager = new TabManager(tabbedPane, TAB_BAR_WIDTH, JTabbedPane.SCROLL_TAB_LAYOUT);
+    tabs = new ArrayList<>(size);
+    tabManager.batch(new Runnable() {
+      @Override
+      public void run() {
+        buildTree(tabManager, shape, size, tabs);
+      }
+    });
+    middleTab = tabs.get(tabs.size() / 2);
+    largestRoot = tabs.get(0);
+    final Tab lastTab = tabs.get(tabs.size() - 1);
+    lastParent = lastTab.getParent() == null ? lastTab : lastTab.getParent();
+    tabbedPane.setSelectedIndex(tabbedPane.getTabCount() / 2);
+
+    final int tabCount = tabbedPane.getTabCount();
+    rects = new Rectangle[tabCount];
+    for (int i = 0; i < tabCount; i++) {
+      rects[i] = new Rectangle(0, i * 20, TAB_BAR_WIDTH, 20);
+    }
+  }
+
+  static void buildTree(final TabManager tabManager, final String shape, final int size, final List<Tab> tabs) {
+    for (int i = 0; i < size; i++) {
+      final Tab parent;
+      if ("flat".equals(shape)) {
+        parent = null;
+      } else if ("deep".equals(shape)) {
+        parent = (i % DEEP_CHAIN_LENGTH) == 0 ? null : tabs.get(i - 1);
+      } else if ("bushy".equals(shape)) {
+        parent = i == 0 ? null : tabs.get((i - 1) / BUSHY_FAN_OUT);
+      } else {
+        throw new IllegalArgumentException("Unknown tree shape: " + shape);
+      }
+      tabs.add(newTab(tabManager, parent, "Tab " + i));
+    }
+  }
+
+  private static Tab newTab(final TabManager tabManager, final Tab parent, final String title) {
+    final JLabel tabComponent = new JLabel(title);
+    final JPanel tabContentPane = new JPanel();
+    return parent == null ? tabManager.addTab(tabComponent, tabContentPane) : parent.addChild(tabComponent, tabContentPane);
+  }
+
+  @Benchmark
+  public Tab addTabAndClose() {
+    final Tab tab = newTab(tabManager, null, "New tab");
+    tab.removeSelf();
+    return tab;
+  }
+
+  @Benchmark
+  public Tab addChildAndClose() {
+    final Tab tab = newTab(tabManager, middleTab, "New child");
+    tab.removeSelf();
+    return tab;
+  }
+
+  /*
+   * collapseTab() collapses all the descendants while expandTab() only expands
+   * the first level, so the pair is only repeatable on a tab whose children are
+   * leaves.
+   */
+  @Benchmark
+  public boolean collapseAndExpand() {
+    lastParent.collapseTab();
+    lastParent.expandTab();
+    return lastParent.isCollapsed();
+  }
+
+  @Benchmark
+  public boolean toggleLargestSubtree() {
+    largestRoot.setCollapsed(true);
+    largestRoot.setCollapsed(false);
+    return largestRoot.isCollapsed();
+  }
+
+  @Benchmark
+  public int moveLastRootToFront() {
+    final TabTreeModel<Tab> tree = tabManager.getTabTreeModel();
+    final Tab lastRoot = tree.getRoots().get(tree.getRoots().size() - 1);
+    tabManager.moveTab(lastRoot, null, 0);
+    tabManager.moveTab(lastRoot, null, -1);
+    return tabbedPane.getTabCount();
+  }
+
+  @Benchmark
+  public Tab getActiveTab() {
+    return tabManager.getActiveTab();
+  }
+
+  @Benchmark
+  public int togglePlacement() {
+    tabManager.setTabPlacement(SwingConstants.TOP);
+    tabManager.setTabPlacement(SwingConstants.LEFT);
+    return tabbedPane.getTabCount();
+  }
+
+  @Benchmark
+  public Rectangle[] computeTabIndentsCached() {
+    tabManager.computeTabIndents(tabbedPane.getTabCount(), rects);
+    return rects;
+  }
+
+  @Benchmark
+  public Rectangle[] computeTabIndentsAfterChange() {
+    tabManager.setTabIndent(20);
+    tabManager.computeTabIndents(tabbedPane.getTabCount(), rects);
+    return rects;
+  }
+
+  /**
+   * Builds the whole tree from scratch, one addTab/addChild at a time.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 3)
+  public List<Tab> buildTree() {
+    final TabManager manager = new TabManager(new CustomTabbedPane(SwingConstants.LEFT), TAB_BAR_WIDTH,
+        JTabbedPane.SCROLL_TAB_LAYOUT);
+    final List<Tab> builtTabs = new ArrayList<>(size);
+    buildTree(manager, shape, size, builtTabs);
+    return builtTabs;
+  }
+}
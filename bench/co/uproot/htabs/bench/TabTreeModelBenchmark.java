@@ -0,0 +1,124 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * JMH benchmarks for TabTreeModel. The model doesn't need a toolkit, so these
+ * go up to 100k tabs.
+ *
+ */
+
+package co.uproot.htabs.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.uproot.htabs.tabmanager.TabTreeModel;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TabTreeModelBenchmark {
+
+  private static final int DEEP_CHAIN_LENGTH = 100;
+  private static final int BUSHY_FAN_OUT = 8;
+
+  @Param({ "1000", "10000", "100000" })
+  public int size;
+
+  @Param({ "flat", "deep", "bushy" })
+  public String shape;
+
+  private TabTreeModel<Object> model;
+  private Object[] tabs;
+  private Object middleTab;
+
+  @Setup
+  public void setUp() {
+    tabs = new Object[size];
+    for (int i = 0; i < size; i++) {
+      tabs[i] = new Object();
+    }
+    model = buildTree();
+    middleTab = tabs[size / 2];
+  }
+
+  private Object getParent(final int i) {
+    if ("flat".equals(shape)) {
+      return null;
+    } else if ("deep".equals(shape)) {
+      return (i % DEEP_CHAIN_LENGTH) == 0 ? null : tabs[i - 1];
+    } else if ("bushy".equals(shape)) {
+      return i == 0 ? null : tabs[(i - 1) / BUSHY_FAN_OUT];
+    }
+    throw new IllegalArgumentException("Unknown tree shape: " + shape);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Measurement(iterations = 10)
+  public TabTreeModel<Object> buildTree() {
+    final TabTreeModel<Object> tree = new TabTreeModel<>();
+    for (int i = 0; i < size; i++) {
+      tree.insert(getParent(i), -1, tabs[i]);
+    }
+    return tree;
+  }
+
+  @Benchmark
+  public int insertAndRemove() {
+    final Object tab = new Object();
+    model.insert(middleTab, -1, tab);
+    model.remove(tab);
+    return model.size();
+  }
+
+  @Benchmark
+  public int getRow() {
+    return model.getRow(tabs[size - 1]);
+  }
+
+  @Benchmark
+  public boolean toggleFirstRoot() {
+    model.setCollapsed(tabs[0], true);
+    model.setCollapsed(tabs[0], false);
+    return model.isCollapsed(tabs[0]);
+  }
+
+  @Benchmark
+  public int moveLastTabToFront() {
+    final Object tab = tabs[size - 1];
+    final Object parent = model.getParent(tab);
+    final int index = model.getIndexInParent(tab);
+    model.move(tab, null, 0);
+    model.move(tab, parent, index);
+    return model.getRowCount();
+  }
+}
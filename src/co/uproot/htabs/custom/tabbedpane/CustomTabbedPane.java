@@ -21,8 +21,15 @@
 
 package co.uproot.htabs.custom.tabbedpane;
 
+import java.awt.Component;
+import java.awt.Container;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
 import javax.swing.JTabbedPane;
 import javax.swing.plaf.TabbedPaneUI;
+import javax.swing.plaf.UIResource;
 
 import co.uproot.htabs.helpers.TabRects;
 
@@ -30,6 +37,16 @@ public class CustomTabbedPane extends JTabbedPane {
 
   private static final long serialVersionUID = 1L;
 
+  private int updateDepth = 0;
+  private boolean stateChangePending = false;
+  private boolean tabComponentsPending = false;
+  private Container tabComponentContainer = null;
+
+  /* Layout passes and their times, read by the instrumentation of TabManager */
+  private volatile long layoutCount = 0;
+  private volatile long layoutNanos = 0;
+  private volatile long maxLayoutNanos = 0;
+
   public CustomTabbedPane() {
     super();
   }
@@ -42,15 +59,187 @@ public class CustomTabbedPane extends JTabbedPane {
     super(tabPlacement, tabLayoutPolicy);
   }
 
+  /**
+   * Defers revalidation, repaints and state change notifications until the
+   * matching {@link #endUpdate()}. Useful when many pages are inserted or
+   * removed in one go. The tab components of the inserted and removed pages
+   * are also added to and removed from the tab area once, at the end.
+   */
+  public void beginUpdate() {
+    updateDepth++;
+  }
+
+  /**
+   * Ends the update started by {@link #beginUpdate()}. When the outermost update
+   * ends, the pane is revalidated and repainted once, and a single
+   * <code>ChangeEvent</code> is fired if the selection was changed meanwhile.
+   */
+  public void endUpdate() {
+    if (updateDepth > 0) {
+      updateDepth--;
+      if (updateDepth == 0) {
+        if (tabComponentsPending) {
+          tabComponentsPending = false;
+          updateTabComponents();
+        }
+        super.revalidate();
+        super.repaint();
+        if (stateChangePending) {
+          stateChangePending = false;
+          super.fireStateChanged();
+        }
+      }
+    }
+  }
+
+  @Override
+  protected void fireStateChanged() {
+    if (updateDepth > 0) {
+      stateChangePending = true;
+    } else {
+      super.fireStateChanged();
+    }
+  }
+
+  /*
+   * The UI reacts to every change of a tab component by scanning all the tab
+   * components for unused ones, which is quadratic over a run of page updates.
+   * Inside an update the change is recorded instead, and the tab components are
+   * brought in sync in a single pass when the update ends.
+   */
+  @Override
+  public void setTabComponentAt(final int index, final Component component) {
+    if (updateDepth > 0) {
+      final Component oldComponent = getTabComponentAt(index);
+      if ((oldComponent != null) && (oldComponent.getParent() != null)) {
+        tabComponentContainer = oldComponent.getParent();
+      }
+    }
+    super.setTabComponentAt(index, component);
+  }
+
+  @Override
+  public void firePropertyChange(final String propertyName, final int oldValue, final int newValue) {
+    if ((updateDepth > 0) && "indexForTabComponent".equals(propertyName)) {
+      tabComponentsPending = true;
+    } else {
+      super.firePropertyChange(propertyName, oldValue, newValue);
+    }
+  }
+
+  private void updateTabComponents() {
+    final int tabCount = getTabCount();
+    final Set<Component> tabComponents = Collections.newSetFromMap(new IdentityHashMap<Component, Boolean>(tabCount));
+    Container container = tabComponentContainer;
+    tabComponentContainer = null;
+    int firstUnattached = -1;
+    for (int i = 0; i < tabCount; i++) {
+      final Component tabComponent = getTabComponentAt(i);
+      if (tabComponent != null) {
+        tabComponents.add(tabComponent);
+        if (tabComponent.getParent() != null) {
+          container = tabComponent.getParent();
+        } else if (firstUnattached < 0) {
+          firstUnattached = i;
+        }
+      }
+    }
+
+    if (container != null) {
+      for (int i = container.getComponentCount() - 1; i >= 0; i--) {
+        final Component c = container.getComponent(i);
+        if (!(c instanceof UIResource) && !tabComponents.contains(c)) {
+          container.remove(i);
+        }
+      }
+    }
+
+    if (firstUnattached >= 0) {
+      if (container == null) {
+        // let the UI install its container for the tab components
+        super.firePropertyChange("indexForTabComponent", -1, firstUnattached);
+        container = getTabComponentAt(firstUnattached).getParent();
+      }
+      if (container != null) {
+        for (int i = firstUnattached; i < tabCount; i++) {
+          final Component tabComponent = getTabComponentAt(i);
+          if ((tabComponent != null) && (tabComponent.getParent() == null)) {
+            container.add(tabComponent);
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public void revalidate() {
+    if (updateDepth == 0) {
+      super.revalidate();
+    }
+  }
+
+  @Override
+  public void repaint(final long tm, final int x, final int y, final int width, final int height) {
+    if (updateDepth == 0) {
+      super.repaint(tm, x, y, width, height);
+    }
+  }
+
   @Override
   public void doLayout() {
-    super.doLayout();
+    final TabbedPaneLayoutListener[] layoutListeners = listenerList.getListeners(TabbedPaneLayoutListener.class);
+    for (final TabbedPaneLayoutListener l : layoutListeners) {
+      l.layoutStarted(this);
+    }
+    final long start = System.nanoTime();
+    try {
+      super.doLayout();
 
-    final TabbedPaneUI ui = getUI();
-    if (ui != null) {
-      if (ui instanceof TabRects) {
-        ((TabRects) ui).computeTabRects();
+      final TabbedPaneUI ui = getUI();
+      if (ui != null) {
+        if (ui instanceof TabRects) {
+          ((TabRects) ui).computeTabRects();
+        }
+      }
+    } finally {
+      final long nanos = System.nanoTime() - start;
+      layoutCount++;
+      layoutNanos += nanos;
+      if (nanos > maxLayoutNanos) {
+        maxLayoutNanos = nanos;
+      }
+      for (final TabbedPaneLayoutListener l : layoutListeners) {
+        l.layoutFinished(this);
       }
     }
   }
+
+  public void addTabbedPaneLayoutListener(final TabbedPaneLayoutListener l) {
+    listenerList.add(TabbedPaneLayoutListener.class, l);
+  }
+
+  public void removeTabbedPaneLayoutListener(final TabbedPaneLayoutListener l) {
+    listenerList.remove(TabbedPaneLayoutListener.class, l);
+  }
+
+  public long getLayoutCount() {
+    return layoutCount;
+  }
+
+  /**
+   * Returns the total time, in nanoseconds, spent laying out the pane.
+   */
+  public long getLayoutNanos() {
+    return layoutNanos;
+  }
+
+  public long getMaxLayoutNanos() {
+    return maxLayoutNanos;
+  }
+
+  public void resetLayoutStats() {
+    layoutCount = 0;
+    layoutNanos = 0;
+    maxLayoutNanos = 0;
+  }
 }
@@ -0,0 +1,35 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Listener for the layout passes
+ * of a CustomTabbedPane
+ *
+ */
+
+package co.uproot.htabs.custom.tabbedpane;
+
+import java.util.EventListener;
+
+/**
+ * Notified around each layout pass of a {@link CustomTabbedPane}.
+ */
+public interface TabbedPaneLayoutListener extends EventListener {
+
+  public void layoutStarted(CustomTabbedPane tabbedPane);
+
+  public void layoutFinished(CustomTabbedPane tabbedPane);
+}
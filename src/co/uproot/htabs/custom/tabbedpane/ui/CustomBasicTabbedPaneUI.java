@@ -21,6 +21,8 @@
 
 package co.uproot.htabs.custom.tabbedpane.ui;
 
+import java.awt.Graphics;
+
 import javax.swing.plaf.basic.BasicTabbedPaneUI;
 
 import co.uproot.htabs.helpers.TabRects;
@@ -37,4 +39,10 @@ public class CustomBasicTabbedPaneUI extends BasicTabbedPaneUI implements TabRec
   public void computeTabRects() {
     tabManager.computeTabIndents(this.tabPane.getTabCount(), rects);
   }
+
+  @Override
+  protected void paintTabArea(final Graphics g, final int tabPlacement, final int selectedIndex) {
+    super.paintTabArea(g, tabPlacement, selectedIndex);
+    tabManager.paintTabHeaders(g, rects, this.tabPane.getTabCount());
+  }
 }
@@ -21,6 +21,8 @@
 
 package co.uproot.htabs.custom.tabbedpane.ui;
 
+import java.awt.Graphics;
+
 import javax.swing.plaf.metal.MetalTabbedPaneUI;
 
 import co.uproot.htabs.helpers.TabRects;
@@ -39,4 +41,10 @@ public class CustomMetalTabbedPaneUI extends MetalTabbedPaneUI implements TabRec
   public void computeTabRects() {
     tabManager.computeTabIndents(this.tabPane.getTabCount(), rects);
   }
+
+  @Override
+  protected void paintTabArea(final Graphics g, final int tabPlacement, final int selectedIndex) {
+    super.paintTabArea(g, tabPlacement, selectedIndex);
+    tabManager.paintTabHeaders(g, rects, this.tabPane.getTabCount());
+  }
 }
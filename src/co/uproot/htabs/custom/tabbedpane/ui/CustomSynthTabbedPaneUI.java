@@ -21,6 +21,8 @@
 
 package co.uproot.htabs.custom.tabbedpane.ui;
 
+import java.awt.Graphics;
+
 import javax.swing.plaf.synth.SynthTabbedPaneUI;
 
 import co.uproot.htabs.helpers.TabRects;
@@ -36,4 +38,10 @@ public class CustomSynthTabbedPaneUI extends SynthTabbedPaneUI implements TabRec
   public void computeTabRects() {
     tabManager.computeTabIndents(this.tabPane.getTabCount(), rects);
   }
+
+  @Override
+  protected void paintTabArea(final Graphics g, final int tabPlacement, final int selectedIndex) {
+    super.paintTabArea(g, tabPlacement, selectedIndex);
+    tabManager.paintTabHeaders(g, rects, this.tabPane.getTabCount());
+  }
 }
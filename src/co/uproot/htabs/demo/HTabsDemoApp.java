@@ -238,28 +238,33 @@ public class HTabsDemoApp {
     final int numTabs = 15;
     final Tab tabs[] = new Tab[numTabs];
     final Random random = new Random(0);
-    for (int i = 0; i < numTabs; i++) {
-      final int colorIndex = i % COLORS.length;
-      final Color color = COLORS[colorIndex];
-      final ColoredIcon icon = new ColoredIcon(color);
-      final boolean root = random.nextDouble() > 0.7d;
-      final int prevTab = random.nextInt(i + 1);
-      if (root || (prevTab == i)) {
-        final String title = "Tab " + i;
-        final ReferenceCustomTabComponent customTabComponent = new ReferenceCustomTabComponent(title, icon);
-        final JPanel tabContent = new DemoTabContentPane(title, colorIndex, customTabComponent);
-        final Tab tab = tabManager.addTab(customTabComponent, tabContent);
-        tab.setTabTitle(title);
-        tabs[i] = tab;
-      } else {
-        final String title = "Tab " + i + " [child of " + prevTab + "]";
-        final ReferenceCustomTabComponent customTabComponent = new ReferenceCustomTabComponent(title, icon);
-        final JPanel tabContent = new DemoTabContentPane(title, colorIndex, customTabComponent);
-        final Tab tab = tabs[prevTab].addChild(customTabComponent, tabContent);
-        tab.setTabTitle(title);
-        tabs[i] = tab;
+    tabManager.batch(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < numTabs; i++) {
+          final int colorIndex = i % COLORS.length;
+          final Color color = COLORS[colorIndex];
+          final ColoredIcon icon = new ColoredIcon(color);
+          final boolean root = random.nextDouble() > 0.7d;
+          final int prevTab = random.nextInt(i + 1);
+          if (root || (prevTab == i)) {
+            final String title = "Tab " + i;
+            final ReferenceCustomTabComponent customTabComponent = new ReferenceCustomTabComponent(title, icon);
+            final JPanel tabContent = new DemoTabContentPane(title, colorIndex, customTabComponent);
+            final Tab tab = tabManager.addTab(customTabComponent, tabContent);
+            tab.setTabTitle(title);
+            tabs[i] = tab;
+          } else {
+            final String title = "Tab " + i + " [child of " + prevTab + "]";
+            final ReferenceCustomTabComponent customTabComponent = new ReferenceCustomTabComponent(title, icon);
+            final JPanel tabContent = new DemoTabContentPane(title, colorIndex, customTabComponent);
+            final Tab tab = tabs[prevTab].addChild(customTabComponent, tabContent);
+            tab.setTabTitle(title);
+            tabs[i] = tab;
+          }
+        }
       }
-    }
+    });
 
     tabbedPane.addChangeListener(new ChangeListener() {
       @Override
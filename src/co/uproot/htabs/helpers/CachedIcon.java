@@ -0,0 +1,96 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Icon decorator which paints a cached
+ * raster of the wrapped icon
+ *
+ */
+
+package co.uproot.htabs.helpers;
+
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
+
+/**
+ * Paints the wrapped icon from a raster rendered once per scale factor of the
+ * device. The raster is rendered for the first component the icon is painted
+ * on, so icons whose appearance depends on the component shouldn't be cached.
+ * When the transform of the graphics rotates or flips, or the raster doesn't
+ * fit in the cache, the wrapped icon is painted directly.
+ */
+public class CachedIcon implements Icon {
+
+  private static final int NON_SCALING_TRANSFORMS = AffineTransform.TYPE_GENERAL_TRANSFORM
+      | AffineTransform.TYPE_GENERAL_ROTATION | AffineTransform.TYPE_QUADRANT_ROTATION | AffineTransform.TYPE_FLIP;
+
+  private final Icon icon;
+  private final IconRasterCache cache;
+
+  public CachedIcon(final Icon icon, final IconRasterCache cache) {
+    this.icon = icon;
+    this.cache = cache;
+  }
+
+  /**
+   * Wraps the icon in a <code>CachedIcon</code>, unless it is <code>null</code>
+   * or already backed by an image.
+   */
+  public static Icon wrap(final Icon icon, final IconRasterCache cache) {
+    if ((icon == null) || (icon instanceof CachedIcon) || (icon instanceof ImageIcon)) {
+      return icon;
+    }
+    return new CachedIcon(icon, cache);
+  }
+
+  public Icon getIcon() {
+    return icon;
+  }
+
+  @Override
+  public void paintIcon(final Component c, final Graphics g, final int x, final int y) {
+    final Graphics2D g2 = (Graphics2D) g;
+    final AffineTransform transform = g2.getTransform();
+    final double scaleX = transform.getScaleX();
+    final double scaleY = transform.getScaleY();
+    if (((transform.getType() & NON_SCALING_TRANSFORMS) == 0) && (scaleX > 0) && (scaleY > 0)) {
+      final BufferedImage raster = cache.getRaster(icon, c, g2, scaleX, scaleY);
+      if (raster != null) {
+        final AffineTransform rasterTransform = AffineTransform.getTranslateInstance(x, y);
+        rasterTransform.scale(1 / scaleX, 1 / scaleY);
+        g2.drawImage(raster, rasterTransform, null);
+        return;
+      }
+    }
+    icon.paintIcon(c, g, x, y);
+  }
+
+  @Override
+  public int getIconWidth() {
+    return icon.getIconWidth();
+  }
+
+  @Override
+  public int getIconHeight() {
+    return icon.getIconHeight();
+  }
+}
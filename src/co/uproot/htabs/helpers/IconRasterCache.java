@@ -0,0 +1,161 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Least recently used cache of icon rasters,
+ * bounded by the memory taken by the rasters
+ *
+ */
+
+package co.uproot.htabs.helpers;
+
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.Icon;
+
+/**
+ * Holds the rasters of the icons painted through {@link CachedIcon}, one per
+ * icon and scale factor. Icons are compared by identity, so all the
+ * <code>CachedIcon</code>s wrapping the same icon share its rasters. The least
+ * recently painted rasters are dropped when the total size of the rasters
+ * exceeds the budget.
+ */
+public class IconRasterCache {
+
+  private static final int BYTES_PER_PIXEL = 4;
+
+  private final Map<Key, BufferedImage> rasters = new LinkedHashMap<>(16, 0.75f, true);
+  private final Key lookupKey = new Key(null, 0, 0);
+  private long budget;
+  private long size = 0;
+
+  public IconRasterCache(final long budget) {
+    this.budget = budget;
+  }
+
+  public long getBudget() {
+    return budget;
+  }
+
+  /**
+   * Sets the maximum memory, in bytes, taken by the cached rasters.
+   */
+  public void setBudget(final long budget) {
+    this.budget = budget;
+    trim();
+  }
+
+  /**
+   * Returns the memory, in bytes, taken by the cached rasters.
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * Drops the rasters of the icon, so that it is rendered again the next time
+   * it is painted. Needed when the appearance of the icon changes.
+   */
+  public void invalidate(final Icon icon) {
+    final Iterator<Map.Entry<Key, BufferedImage>> i = rasters.entrySet().iterator();
+    while (i.hasNext()) {
+      final Map.Entry<Key, BufferedImage> entry = i.next();
+      if (entry.getKey().icon == icon) {
+        size -= sizeOf(entry.getValue());
+        i.remove();
+      }
+    }
+  }
+
+  public void clear() {
+    rasters.clear();
+    size = 0;
+  }
+
+  /**
+   * Returns the raster of the icon for the given scale factor, rendering it if
+   * needed, or <code>null</code> if the raster doesn't fit in the budget.
+   */
+  BufferedImage getRaster(final Icon icon, final Component c, final Graphics2D g, final double scaleX,
+      final double scaleY) {
+    lookupKey.icon = icon;
+    lookupKey.scaleX = scaleX;
+    lookupKey.scaleY = scaleY;
+    BufferedImage raster = rasters.get(lookupKey);
+    lookupKey.icon = null;
+    if (raster == null) {
+      final int width = (int) Math.ceil(icon.getIconWidth() * scaleX);
+      final int height = (int) Math.ceil(icon.getIconHeight() * scaleY);
+      if ((width <= 0) || (height <= 0) || ((long) width * height * BYTES_PER_PIXEL > budget)) {
+        return null;
+      }
+      raster = g.getDeviceConfiguration().createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+      final Graphics2D rasterGraphics = raster.createGraphics();
+      rasterGraphics.scale(scaleX, scaleY);
+      icon.paintIcon(c, rasterGraphics, 0, 0);
+      rasterGraphics.dispose();
+      rasters.put(new Key(icon, scaleX, scaleY), raster);
+      size += sizeOf(raster);
+      trim();
+    }
+    return raster;
+  }
+
+  private void trim() {
+    final Iterator<BufferedImage> i = rasters.values().iterator();
+    while ((size > budget) && i.hasNext()) {
+      size -= sizeOf(i.next());
+      i.remove();
+    }
+  }
+
+  private static long sizeOf(final BufferedImage raster) {
+    return (long) raster.getWidth() * raster.getHeight() * BYTES_PER_PIXEL;
+  }
+
+  private static final class Key {
+    private Icon icon;
+    private double scaleX;
+    private double scaleY;
+
+    Key(final Icon icon, final double scaleX, final double scaleY) {
+      this.icon = icon;
+      this.scaleX = scaleX;
+      this.scaleY = scaleY;
+    }
+
+    @Override
+    public int hashCode() {
+      final long bits = Double.doubleToLongBits(scaleX) + (31 * Double.doubleToLongBits(scaleY));
+      return System.identityHashCode(icon) ^ (int) (bits ^ (bits >>> 32));
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return (icon == other.icon) && (scaleX == other.scaleX) && (scaleY == other.scaleY);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Cache of pre-rendered images for small
+ * vector graphics that are painted often
+ *
+ */
+
+package co.uproot.htabs.helpers;
+
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.swing.UIManager;
+
+/**
+ * Renders each state of a small graphic once per scale factor of the device it
+ * is painted on, and blits the rendered image afterwards. The images are
+ * rendered at the resolution of the device, so that they stay sharp on HiDPI
+ * screens. The cache is cleared when the look and feel changes.
+ */
+public abstract class SpriteCache {
+
+  private final int width;
+  private final int height;
+  private final int stateCount;
+  private final Map<Point2D, BufferedImage[]> spritesByScale = new HashMap<>();
+
+  private double lastScaleX = 0;
+  private double lastScaleY = 0;
+  private BufferedImage[] lastSprites = null;
+
+  protected SpriteCache(final int width, final int height, final int stateCount) {
+    this.width = width;
+    this.height = height;
+    this.stateCount = stateCount;
+    UIManager.addPropertyChangeListener(new PropertyChangeListener() {
+      @Override
+      public void propertyChange(final PropertyChangeEvent evt) {
+        if ("lookAndFeel".equals(evt.getPropertyName())) {
+          invalidate();
+        }
+      }
+    });
+  }
+
+  /**
+   * Paints the graphic in the given state, in user space, at the given
+   * location.
+   */
+  public void paint(final Graphics2D g, final int x, final int y, final int state) {
+    final AffineTransform transform = g.getTransform();
+    final double scaleX = transform.getScaleX();
+    final double scaleY = transform.getScaleY();
+    final int rotation = AffineTransform.TYPE_GENERAL_TRANSFORM | AffineTransform.TYPE_GENERAL_ROTATION
+        | AffineTransform.TYPE_QUADRANT_ROTATION | AffineTransform.TYPE_FLIP;
+    if (((transform.getType() & rotation) != 0) || (scaleX <= 0) || (scaleY <= 0)) {
+      final Graphics2D g2 = (Graphics2D) g.create();
+      g2.translate(x, y);
+      paintSprite(g2, state);
+      g2.dispose();
+      return;
+    }
+
+    final BufferedImage sprite = getSprites(g, scaleX, scaleY)[state];
+    final AffineTransform spriteTransform = AffineTransform.getTranslateInstance(x, y);
+    spriteTransform.scale(1 / scaleX, 1 / scaleY);
+    g.drawImage(sprite, spriteTransform, null);
+  }
+
+  public void invalidate() {
+    spritesByScale.clear();
+    lastSprites = null;
+  }
+
+  /**
+   * Paints the graphic in the given state, with its origin at (0, 0) of the
+   * user space.
+   */
+  protected abstract void paintSprite(Graphics2D g, int state);
+
+  private BufferedImage[] getSprites(final Graphics2D g, final double scaleX, final double scaleY) {
+    if ((lastSprites != null) && (scaleX == lastScaleX) && (scaleY == lastScaleY)) {
+      return lastSprites;
+    }
+    final Point2D scale = new Point2D.Double(scaleX, scaleY);
+    BufferedImage[] sprites = spritesByScale.get(scale);
+    if (sprites == null) {
+      sprites = new BufferedImage[stateCount];
+      final int imageWidth = (int) Math.ceil(width * scaleX);
+      final int imageHeight = (int) Math.ceil(height * scaleY);
+      for (int state = 0; state < stateCount; state++) {
+        final BufferedImage image = g.getDeviceConfiguration().createCompatibleImage(imageWidth, imageHeight,
+            Transparency.TRANSLUCENT);
+        final Graphics2D imageGraphics = image.createGraphics();
+        imageGraphics.scale(scaleX, scaleY);
+        paintSprite(imageGraphics, state);
+        imageGraphics.dispose();
+        sprites[state] = image;
+      }
+      spritesByScale.put(scale, sprites);
+    }
+    lastScaleX = scaleX;
+    lastScaleY = scaleY;
+    lastSprites = sprites;
+    return sprites;
+  }
+}
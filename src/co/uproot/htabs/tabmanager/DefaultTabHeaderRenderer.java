@@ -0,0 +1,151 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Paints the tab title, icon, collapse triangle and
+ * close cross of a tab header.
+ *
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+
+import javax.swing.Icon;
+import javax.swing.JComponent;
+import javax.swing.JTabbedPane;
+
+import co.uproot.htabs.tabmanager.TabManager.Tab;
+
+public class DefaultTabHeaderRenderer extends JComponent implements TabHeaderRenderer {
+
+  private static final long serialVersionUID = 1L;
+  private static final int MARGIN = 5;
+  private static final int MARGIN_VERT = 4;
+  private static final int MARGIN_LEFT = 8;
+  private static final int ICON_GAP = 4;
+  private static final int COLLAPSE_SIZE = 16;
+  private static final int CLOSE_SIZE = 8;
+  private static final int CLOSE_MARGIN = 4;
+  private static final int CLOSE_TOTAL_SIZE = CLOSE_SIZE + (2 * CLOSE_MARGIN);
+
+  private String title;
+  private Icon icon;
+  private int indent;
+  private boolean collapsed;
+  private boolean showCollapseControl;
+  private int rolloverZone;
+
+  public DefaultTabHeaderRenderer() {
+    setOpaque(false);
+  }
+
+  @Override
+  public Component getTabHeaderRendererComponent(final JTabbedPane tabbedPane, final Tab tab, final int indent,
+      final boolean isSelected, final boolean showCollapseControl, final int rolloverZone) {
+    this.title = tab.getTabTitle();
+    this.icon = tab.getPaintedIcon();
+    this.indent = indent;
+    this.collapsed = tab.isCollapsed();
+    this.showCollapseControl = showCollapseControl;
+    this.rolloverZone = rolloverZone;
+    setFont(tabbedPane.getFont());
+    setForeground(tabbedPane.getForeground());
+    return this;
+  }
+
+  @Override
+  public int getZoneAt(final Tab tab, final int indent, final boolean showCollapseControl, final int width,
+      final int height, final int x, final int y) {
+    final int collapseX = indent + MARGIN_LEFT;
+    if (showCollapseControl && (x >= collapseX) && (x < collapseX + COLLAPSE_SIZE)) {
+      return ZONE_COLLAPSE;
+    }
+    final int closeX = width - MARGIN - CLOSE_TOTAL_SIZE;
+    if ((x >= closeX) && (x < closeX + CLOSE_TOTAL_SIZE)) {
+      return ZONE_CLOSE;
+    }
+    return ZONE_NONE;
+  }
+
+  @Override
+  public Dimension getPreferredSize() {
+    final FontMetrics metrics = getFontMetrics(getFont());
+    final int titleWidth = title == null ? 0 : metrics.stringWidth(title);
+    final int iconWidth = icon == null ? 0 : icon.getIconWidth() + ICON_GAP;
+    final int iconHeight = icon == null ? 0 : icon.getIconHeight();
+    final int width = indent + MARGIN_LEFT + COLLAPSE_SIZE + MARGIN + iconWidth + titleWidth + MARGIN + CLOSE_TOTAL_SIZE + MARGIN;
+    final int height = Math.max(Math.max(metrics.getHeight(), iconHeight), COLLAPSE_SIZE) + (2 * MARGIN_VERT);
+    return new Dimension(width, height);
+  }
+
+  @Override
+  protected void paintComponent(final Graphics g) {
+    final Graphics2D g2 = (Graphics2D) g.create();
+    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    final int height = getHeight();
+    final int closeX = getWidth() - MARGIN - CLOSE_TOTAL_SIZE;
+
+    int x = indent + MARGIN_LEFT;
+    if (showCollapseControl) {
+      final int state = collapsed ? TabManager.COLLAPSE_BUTTON_COLLAPSED : TabManager.COLLAPSE_BUTTON_EXPANDED;
+      TabManager.collapseButtonSprites.paint(g2, x, (height - COLLAPSE_SIZE) / 2, state);
+    }
+    x += COLLAPSE_SIZE + MARGIN;
+
+    if (icon != null) {
+      icon.paintIcon(this, g2, x, (height - icon.getIconHeight()) / 2);
+      x += icon.getIconWidth() + ICON_GAP;
+    }
+
+    if (title != null) {
+      final Graphics2D titleGraphics = (Graphics2D) g2.create();
+      titleGraphics.clipRect(x, 0, Math.max(0, closeX - MARGIN - x), height);
+      titleGraphics.setFont(getFont());
+      titleGraphics.setColor(getForeground());
+      final FontMetrics metrics = titleGraphics.getFontMetrics();
+      titleGraphics.drawString(title, x, ((height - metrics.getHeight()) / 2) + metrics.getAscent());
+      titleGraphics.dispose();
+    }
+
+    final int closeY = (height - CLOSE_TOTAL_SIZE) / 2;
+    TabManager.closeButtonSprites.paint(g2, closeX, closeY, rolloverZone == ZONE_CLOSE ? TabManager.CLOSE_BUTTON_ROLLOVER : 0);
+    g2.dispose();
+  }
+
+  /* Overridden for performance reasons, as in DefaultListCellRenderer */
+
+  @Override
+  public void invalidate() {
+  }
+
+  @Override
+  public void validate() {
+  }
+
+  @Override
+  public void revalidate() {
+  }
+
+  @Override
+  public void repaint(final long tm, final int x, final int y, final int width, final int height) {
+  }
+}
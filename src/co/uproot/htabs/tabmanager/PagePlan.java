@@ -0,0 +1,225 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Page insertions and removals which bring the
+ * pages of a tabbed pane in line with the tab tree
+ *
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Diff between the pages of a tabbed pane and the rows of the tab tree. The
+ * plan is captured on the event dispatch thread from copies of both sequences,
+ * and {@link #compute()} doesn't touch the tree or the tabbed pane, so it can
+ * run on any thread.
+ * <p>
+ * The pages which stay put are the longest run of pages already in the order
+ * of the rows. Every other page of a tab is removed, and the rows without a
+ * page are then inserted around the pages that stayed. Pages which are not
+ * managed by the TabManager keep their place among the pages that stayed. The
+ * indent of every page after the changes is computed along the way.
+ */
+final class PagePlan<T> {
+
+  private static final int UNMANAGED = -1;
+  private static final int REMOVED = -2;
+
+  private final List<T> rows;
+  private final int[] levels;
+  private final List<T> pages;
+  private final boolean[] managed;
+  private final int indentStep;
+  private final int generation;
+
+  private int[] removals;
+  private int[] insertionIndexes;
+  private List<T> insertions;
+  private int[] indents;
+
+  /**
+   * @param rows the rows of the tree
+   * @param levels the level of each row
+   * @param pages the tab of each page, <code>null</code> for the pages without
+   *          a tab
+   * @param managed whether each page is managed by the TabManager; managed
+   *          pages without a tab are removed
+   * @param indentStep the indent of a level
+   * @param generation the structure generation the copies were taken in
+   */
+  PagePlan(final List<T> rows, final int[] levels, final List<T> pages, final boolean[] managed,
+      final int indentStep, final int generation) {
+    this.rows = rows;
+    this.levels = levels;
+    this.pages = pages;
+    this.managed = managed;
+    this.indentStep = indentStep;
+    this.generation = generation;
+  }
+
+  int getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Returns the indexes of the pages to remove, from the last to the first.
+   */
+  int[] getRemovals() {
+    return removals;
+  }
+
+  /**
+   * Returns the indexes at which the tabs of {@link #getInsertions()} are
+   * inserted, in increasing order, once the removals are done.
+   */
+  int[] getInsertionIndexes() {
+    return insertionIndexes;
+  }
+
+  List<T> getInsertions() {
+    return insertions;
+  }
+
+  /**
+   * Returns the indent of every page once the plan is applied, or
+   * <code>-1</code> for the pages which are not managed by the TabManager.
+   */
+  int[] getIndents() {
+    return indents;
+  }
+
+  void compute() {
+    final int rowCount = rows.size();
+    final int pageCount = pages.size();
+    final Map<T, Integer> rowIndexes = new IdentityHashMap<>(rowCount);
+    for (int i = 0; i < rowCount; i++) {
+      rowIndexes.put(rows.get(i), i);
+    }
+
+    /* The row of every page, or why it has none */
+    final int[] pageRows = new int[pageCount];
+    final int[] candidates = new int[pageCount];
+    final int[] candidateRows = new int[pageCount];
+    int candidateCount = 0;
+    for (int i = 0; i < pageCount; i++) {
+      if (!managed[i]) {
+        pageRows[i] = UNMANAGED;
+      } else {
+        final T tab = pages.get(i);
+        final Integer row = tab == null ? null : rowIndexes.remove(tab);
+        if (row == null) {
+          pageRows[i] = REMOVED;
+        } else {
+          pageRows[i] = row;
+          candidates[candidateCount] = i;
+          candidateRows[candidateCount] = row;
+          candidateCount++;
+        }
+      }
+    }
+
+    final boolean[] kept = keepLongestIncreasing(candidateRows, candidateCount);
+    final boolean[] keptRows = new boolean[rowCount];
+    int keptCount = 0;
+    int removalCount = 0;
+    for (int k = 0; k < candidateCount; k++) {
+      if (kept[k]) {
+        keptRows[candidateRows[k]] = true;
+        keptCount++;
+      } else {
+        pageRows[candidates[k]] = REMOVED;
+      }
+    }
+    for (int i = 0; i < pageCount; i++) {
+      if (pageRows[i] == REMOVED) {
+        removalCount++;
+      }
+    }
+    removals = new int[removalCount];
+    for (int i = pageCount - 1, r = 0; i >= 0; i--) {
+      if (pageRows[i] == REMOVED) {
+        removals[r++] = i;
+      }
+    }
+
+    final int insertionCount = rowCount - keptCount;
+    insertionIndexes = new int[insertionCount];
+    insertions = new ArrayList<>(insertionCount);
+    indents = new int[pageCount - removalCount + insertionCount];
+    int page = 0;
+    int index = 0;
+    for (int row = 0; row < rowCount; row++) {
+      while ((page < pageCount) && (pageRows[page] < 0)) {
+        if (pageRows[page] == UNMANAGED) {
+          indents[index++] = -1;
+        }
+        page++;
+      }
+      if (keptRows[row]) {
+        /* The kept pages are in the order of the rows, so this is the page of the row */
+        page++;
+      } else {
+        insertionIndexes[insertions.size()] = index;
+        insertions.add(rows.get(row));
+      }
+      indents[index++] = levels[row] * indentStep;
+    }
+    for (; page < pageCount; page++) {
+      if (pageRows[page] == UNMANAGED) {
+        indents[index++] = -1;
+      }
+    }
+  }
+
+  /**
+   * Marks a longest strictly increasing subsequence of the first
+   * <code>count</code> values.
+   */
+  static boolean[] keepLongestIncreasing(final int[] values, final int count) {
+    /* tails[l] is the index of the smallest value ending an increasing run of length l + 1 */
+    final int[] tails = new int[count];
+    final int[] previous = new int[count];
+    int length = 0;
+    for (int i = 0; i < count; i++) {
+      int low = 0;
+      int high = length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (values[tails[mid]] < values[i]) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      previous[i] = low > 0 ? tails[low - 1] : -1;
+      tails[low] = i;
+      if (low == length) {
+        length++;
+      }
+    }
+    final boolean[] kept = new boolean[count];
+    for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+      kept[i] = true;
+    }
+    return kept;
+  }
+}
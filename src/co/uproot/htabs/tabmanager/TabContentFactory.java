@@ -0,0 +1,36 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.awt.Component;
+
+import co.uproot.htabs.tabmanager.TabManager.Tab;
+
+/**
+ * Creates the content pane of a tab on demand. A tab added with a factory shows
+ * its header immediately, while its content pane is created only when the tab
+ * is selected for the first time.
+ */
+public interface TabContentFactory {
+
+  /**
+   * Creates the content pane for the given tab. Called on the event dispatch
+   * thread, at most once per tab.
+   */
+  public Component createTabContentPane(Tab tab);
+
+}
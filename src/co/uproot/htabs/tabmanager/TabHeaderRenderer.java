@@ -0,0 +1,66 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.awt.Component;
+
+import javax.swing.JTabbedPane;
+
+import co.uproot.htabs.tabmanager.TabManager.Tab;
+
+/**
+ * Identifies components that can be used as "rubber stamps" to paint the tab
+ * headers, analogous to {@link javax.swing.ListCellRenderer}. When a renderer
+ * is set with {@link TabManager#setTabHeaderRenderer(TabHeaderRenderer)}, the
+ * tabs don't have any header components of their own. The tabbed pane UI
+ * stamps the header of every visible tab and a single mouse handler on the
+ * tabbed pane uses {@link #getZoneAt} to hit test the collapse and close
+ * controls.
+ */
+public interface TabHeaderRenderer {
+
+  public static final int ZONE_NONE = 0;
+  public static final int ZONE_COLLAPSE = 1;
+  public static final int ZONE_CLOSE = 2;
+
+  /**
+   * Returns a component configured to paint the header of the given tab.
+   *
+   * @param tabbedPane
+   *          the tabbed pane being painted
+   * @param tab
+   *          the tab whose header is painted
+   * @param indent
+   *          the horizontal space to leave before the content of the header
+   * @param isSelected
+   *          <code>true</code> if the tab is the selected one
+   * @param showCollapseControl
+   *          <code>true</code> if the collapse control has to be painted
+   * @param rolloverZone
+   *          the zone of the header under the mouse, one of the
+   *          <code>ZONE_</code> constants
+   */
+  public Component getTabHeaderRendererComponent(JTabbedPane tabbedPane, Tab tab, int indent, boolean isSelected,
+      boolean showCollapseControl, int rolloverZone);
+
+  /**
+   * Returns the zone of the header at the given point, relative to the header
+   * bounds. One of the <code>ZONE_</code> constants.
+   */
+  public int getZoneAt(Tab tab, int indent, boolean showCollapseControl, int width, int height, int x, int y);
+
+}
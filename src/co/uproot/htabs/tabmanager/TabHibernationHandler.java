@@ -0,0 +1,49 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.awt.Component;
+
+import co.uproot.htabs.tabmanager.TabManager.Tab;
+
+/**
+ * Hooks used by {@link TabManager} to discard the content panes of the least
+ * recently used tabs and to bring them back when the tabs are selected again.
+ * See {@link TabManager#setHibernationHandler(TabHibernationHandler)}.
+ */
+public interface TabHibernationHandler {
+
+  /**
+   * Called before the content pane of the tab is discarded. The content pane is
+   * still available through {@link Tab#getTabContentPane()}, so that any
+   * lightweight state needed to restore it can be saved.
+   */
+  public void hibernate(Tab tab);
+
+  /**
+   * Called when a hibernated tab is selected again. Returns the new content
+   * pane of the tab.
+   */
+  public Component restore(Tab tab);
+
+  /**
+   * Returns an estimate of the memory held by the content pane of the tab, in
+   * bytes. Only used when a memory budget is set.
+   */
+  public long estimateContentSize(Tab tab);
+
+}
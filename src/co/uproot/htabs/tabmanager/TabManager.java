@@ -30,34 +30,75 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.event.ContainerEvent;
+import java.awt.event.ContainerListener;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Path2D;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.swing.AbstractButton;
 import javax.swing.BorderFactory;
+import javax.swing.CellRendererPane;
 import javax.swing.Icon;
 import javax.swing.JButton;
+import javax.swing.JComponent;
 import javax.swing.JPanel;
 import javax.swing.JTabbedPane;
+import javax.swing.JViewport;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.border.Border;
 import javax.swing.event.AncestorEvent;
 import javax.swing.event.AncestorListener;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.plaf.TabbedPaneUI;
+import javax.swing.plaf.UIResource;
 import javax.swing.plaf.metal.MetalTabbedPaneUI;
 import javax.swing.plaf.synth.SynthTabbedPaneUI;
 
 import co.uproot.htabs.custom.components.HideableComponentWrapper;
+import co.uproot.htabs.custom.tabbedpane.CustomTabbedPane;
+import co.uproot.htabs.custom.tabbedpane.TabbedPaneLayoutListener;
 import co.uproot.htabs.custom.tabbedpane.ui.CustomBasicTabbedPaneUI;
 import co.uproot.htabs.custom.tabbedpane.ui.CustomMetalTabbedPaneUI;
 import co.uproot.htabs.custom.tabbedpane.ui.CustomMotifTabbedPaneUI;
 import co.uproot.htabs.custom.tabbedpane.ui.CustomSynthTabbedPaneUI;
 import co.uproot.htabs.custom.tabbedpane.ui.CustomWindowsTabbedPaneUI;
+import co.uproot.htabs.helpers.CachedIcon;
+import co.uproot.htabs.helpers.IconRasterCache;
+import co.uproot.htabs.helpers.SpriteCache;
 
 import com.sun.java.swing.plaf.motif.MotifTabbedPaneUI;
 import com.sun.java.swing.plaf.windows.WindowsTabbedPaneUI;
@@ -70,8 +111,142 @@ public class TabManager {
   private static final int COLLAPSE_BUTTON_WIDTH = 16;
   private static final int COLLAPSE_BUTTON_TOTAL_WIDTH = COLLAPSE_BUTTON_WIDTH + MARGIN;
 
+  private static final int CLOSE_BUTTON_SIZE = 8;
+  private static final int CLOSE_BUTTON_MARGIN_VERT = 4;
+  private static final int CLOSE_BUTTON_MARGIN_HORIZ = 4;
+  private static final int CLOSE_BUTTON_WIDTH = CLOSE_BUTTON_SIZE + (2 * CLOSE_BUTTON_MARGIN_HORIZ);
+  private static final int CLOSE_BUTTON_HEIGHT = CLOSE_BUTTON_SIZE + (2 * CLOSE_BUTTON_MARGIN_VERT);
+  private static final Color CROSS_COLOR = new Color(100, 100, 100, 200);
+  private static final Color CROSS_ROLLOVER_COLOR = new Color(250, 50, 50, 200);
+
+  /* The buttons of the headers are rendered once per state and scale factor,
+   * and shared by every header. */
+  static final int CLOSE_BUTTON_ROLLOVER = 1;
+  static final int CLOSE_BUTTON_PRESSED = 2;
+  static final SpriteCache closeButtonSprites = new SpriteCache(CLOSE_BUTTON_WIDTH, CLOSE_BUTTON_HEIGHT, 4) {
+    @Override
+    protected void paintSprite(final Graphics2D g2, final int state) {
+      g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      g2.setColor(CROSS_COLOR);
+      if ((state & CLOSE_BUTTON_ROLLOVER) != 0) {
+        g2.setColor(CROSS_ROLLOVER_COLOR);
+        g2.fillRoundRect(0, 0, CLOSE_BUTTON_WIDTH, CLOSE_BUTTON_HEIGHT, 5, 5);
+        g2.setColor(Color.WHITE);
+      }
+      /* A pressed button nudges the cross, while its background stays in place */
+      if ((state & CLOSE_BUTTON_PRESSED) != 0) {
+        g2.translate(1, 1);
+      }
+      g2.setStroke(new BasicStroke(1));
+      g2.drawLine(CLOSE_BUTTON_MARGIN_HORIZ, CLOSE_BUTTON_MARGIN_VERT, CLOSE_BUTTON_MARGIN_HORIZ + CLOSE_BUTTON_SIZE,
+          CLOSE_BUTTON_MARGIN_VERT + CLOSE_BUTTON_SIZE);
+      g2.drawLine(CLOSE_BUTTON_MARGIN_HORIZ + CLOSE_BUTTON_SIZE, CLOSE_BUTTON_MARGIN_VERT, CLOSE_BUTTON_MARGIN_HORIZ,
+          CLOSE_BUTTON_MARGIN_VERT + CLOSE_BUTTON_SIZE);
+    }
+  };
+
+  static final int COLLAPSE_BUTTON_EXPANDED = 0;
+  static final int COLLAPSE_BUTTON_COLLAPSED = 1;
+  static final SpriteCache collapseButtonSprites = new SpriteCache(COLLAPSE_BUTTON_WIDTH, COLLAPSE_BUTTON_WIDTH, 2) {
+    @Override
+    protected void paintSprite(final Graphics2D g2, final int state) {
+      g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      g2.setColor(Color.BLACK);
+      g2.fill(makeCollapsePolygon(state == COLLAPSE_BUTTON_COLLAPSED));
+    }
+  };
+
   private final JTabbedPane tabbedPane;
-  private final List<Tab> tabs = new ArrayList<>();
+  private final TabTreeModel<Tab> tabTree = new TabTreeModel<>();
+
+  /* Page index requested for the root tab being added, -1 to follow the tree */
+  private int rootPageIndex = -1;
+
+  /*
+   * Indexes of the two pages inserted last, kept in step with the later page
+   * insertions and removals. Tabs are usually inserted next to one of them, so
+   * the page before a new row is looked for there first.
+   */
+  private final int[] recentPageIndexes = { -1, -1 };
+
+  /* Identity indexes over every Tab in the hierarchy, keyed by the wrapping container
+   * and by the content pane, so that lookups don't need to walk the tree. */
+  private final Map<Component, Tab> tabsByTabComponent = new IdentityHashMap<>();
+  private final Map<Component, Tab> tabsByTabContentPane = new IdentityHashMap<>();
+
+  /* Tabs which have a key, see Tab.setKey() */
+  private final Map<Object, Tab> tabsByKey = new HashMap<>();
+
+  /* Incremented whenever the pages of the tabbed pane or the levels of the tabs
+   * change. The indent table is only valid for the generation it was built in. */
+  private int structureGeneration = 0;
+  private int tabIndentsGeneration = -1;
+  private int[] tabIndents = new int[0];
+
+  private int updateDepth = 0;
+  private boolean pagesOutOfSync = false;
+
+  /* With background page sync, the pages are brought in line with the tree by a
+   * plan computed off the event dispatch thread. Page updates are deferred while
+   * a plan is pending. */
+  private boolean backgroundPageSync = false;
+  private SwingWorker<PagePlan<Tab>, Void> pagePlanner = null;
+
+  /* In virtualized mode only the headers which intersect the scroll viewport are
+   * backed by a TabComponentWrappingContainer. The containers are recycled
+   * through a small pool as the strip is scrolled. */
+  private static final int HEADER_POOL_SIZE = 16;
+  private static final int HEADER_OVERSCAN = 2;
+  private boolean virtualized = false;
+  private final ArrayDeque<TabComponentWrappingContainer> headerPool = new ArrayDeque<>();
+  private JViewport headerViewport;
+  private boolean headerRefreshPending = false;
+  private boolean refreshingHeaders = false;
+  private final ChangeListener headerViewportListener = new ChangeListener() {
+    @Override
+    public void stateChanged(final ChangeEvent e) {
+      refreshHeaders();
+    }
+  };
+
+  /* With a header renderer, the headers are stamped by the tabbed pane UI and a
+   * single mouse handler hit tests their collapse and close zones. */
+  private TabHeaderRenderer headerRenderer;
+  private CellRendererPane headerRendererPane;
+  private final HeaderMouseHandler headerMouseHandler = new HeaderMouseHandler();
+  private Component headerMouseTarget;
+  private int rolloverTabIndex = -1;
+  private int rolloverZone = TabHeaderRenderer.ZONE_NONE;
+
+  /* Tabs with a realized content pane, from the least to the most recently used,
+   * mapped to the estimated size of their content. */
+  private final LinkedHashMap<Tab, Long> realizedTabs = new LinkedHashMap<>(16, 0.75f, true);
+  private long realizedContentSize = 0;
+  private TabHibernationHandler hibernationHandler;
+  private int maxRealizedTabs = Integer.MAX_VALUE;
+  private long contentMemoryBudget = Long.MAX_VALUE;
+
+  /* Rasters of the tab icons, shared by the tabs which use the same icon */
+  private static final long DEFAULT_ICON_CACHE_BUDGET = 4 * 1024 * 1024;
+  private final IconRasterCache iconRasterCache = new IconRasterCache(DEFAULT_ICON_CACHE_BUDGET);
+
+  /* Index of the titles and tool tips, built by the first search */
+  private TabTitleIndex<Tab> titleIndex = null;
+  private SwingWorker<List<Tab>, Void> fuzzySearch = null;
+
+  private static final long DEFAULT_RESTORE_FRAME_BUDGET = 8;
+
+  /* Operation counters, only kept while instrumented */
+  private TabManagerStats stats = null;
+  private ObjectName statsName = null;
+  private boolean statsSamplePending = false;
+
+  /* Tracing of the operations, only done while there are listeners */
+  private final List<TabOperationListener> operationListeners = new CopyOnWriteArrayList<>();
+  private boolean tracingOperation = false;
+  private long layoutStart = 0;
+  private long stallThreshold = 0;
+  private StallSampler stallSampler = null;
 
   public TabManager(final JTabbedPane tabbedPane, final int tabBarWidth, final int tabLayoutPolicy) {
     this.tabbedPane = tabbedPane;
@@ -92,19 +267,468 @@ public class TabManager {
       this.tabbedPane.setUI(new CustomBasicTabbedPaneUI(this));
     }
 
+    tabTree.setCollapsedChildrenHidden(isVerticalPlacement());
+    tabTree.addTabTreeModelListener(new TabPagesUpdater());
+
+    this.tabbedPane.addContainerListener(new ContainerListener() {
+      @Override
+      public void componentAdded(final ContainerEvent e) {
+        structureChanged();
+      }
+
+      @Override
+      public void componentRemoved(final ContainerEvent e) {
+        structureChanged();
+      }
+    });
+    this.tabbedPane.addPropertyChangeListener("indexForTabComponent", new PropertyChangeListener() {
+      @Override
+      public void propertyChange(final PropertyChangeEvent evt) {
+        structureChanged();
+      }
+    });
+    this.tabbedPane.addChangeListener(new ChangeListener() {
+      @Override
+      public void stateChanged(final ChangeEvent e) {
+        final Tab activeTab = getActiveTab();
+        if (activeTab != null) {
+          activeTab.realizeTabContentPane();
+          touchTabContent(activeTab);
+        }
+      }
+    });
+    this.tabbedPane.addPropertyChangeListener("tabLayoutPolicy", new PropertyChangeListener() {
+      @Override
+      public void propertyChange(final PropertyChangeEvent evt) {
+        scheduleHeaderRefresh();
+      }
+    });
+    if (this.tabbedPane instanceof CustomTabbedPane) {
+      ((CustomTabbedPane) this.tabbedPane).addTabbedPaneLayoutListener(new TabbedPaneLayoutListener() {
+        @Override
+        public void layoutStarted(final CustomTabbedPane pane) {
+          layoutStart = beginOperation();
+        }
+
+        @Override
+        public void layoutFinished(final CustomTabbedPane pane) {
+          final long start = layoutStart;
+          layoutStart = 0;
+          endOperation(start, TabOperationEvent.Type.LAYOUT, null, pane.getTabCount());
+        }
+      });
+    }
+  }
+
+  private void structureChanged() {
+    structureGeneration++;
+    scheduleStatsSample();
+  }
+
+  /**
+   * Enables or disables the instrumentation of this TabManager. When enabled,
+   * the counts and times of its main operations, along with the sizes of the
+   * tab tree, are kept in a {@link TabManagerStatsMBean} registered with the
+   * platform MBean server as
+   * <code>co.uproot.htabs:type=TabManager,id=&lt;identity hash&gt;</code>.
+   * When disabled, the operations aren't timed at all.
+   */
+  public void setInstrumented(final boolean instrumented) {
+    if (instrumented == (stats != null)) {
+      return;
+    }
+    try {
+      if (instrumented) {
+        final TabManagerStats newStats = new TabManagerStats(tabbedPane);
+        final ObjectName name = new ObjectName("co.uproot.htabs:type=TabManager,id="
+            + Integer.toHexString(System.identityHashCode(this)));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(newStats, name);
+        stats = newStats;
+        statsName = name;
+        scheduleStatsSample();
+      } else {
+        final ObjectName name = statsName;
+        stats = null;
+        statsName = null;
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+      }
+    } catch (final JMException e) {
+      throw new IllegalStateException("Couldn't register the TabManager MBean", e);
+    }
+  }
+
+  public boolean isInstrumented() {
+    return stats != null;
+  }
+
+  /**
+   * Returns the operation counters, or <code>null</code> when this TabManager
+   * isn't instrumented.
+   */
+  public TabManagerStatsMBean getStats() {
+    return stats;
+  }
+
+  /* The sizes are sampled once the current event is processed */
+  private void scheduleStatsSample() {
+    if ((stats == null) || statsSamplePending) {
+      return;
+    }
+    statsSamplePending = true;
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        statsSamplePending = false;
+        final TabManagerStats stats = TabManager.this.stats;
+        if (stats != null) {
+          stats.setSizes(tabTree.size(), tabTree.getRowCount(), tabTree.getDepth(), realizedTabs.size());
+        }
+      }
+    });
+  }
+
+  /**
+   * Adds a listener notified after each operation on the tabs: adding,
+   * removing, moving, expanding and collapsing tabs, switching the placement,
+   * and the layout passes of the tabbed pane when it is a
+   * <code>CustomTabbedPane</code>. The operations aren't timed while there are
+   * no listeners.
+   */
+  public void addTabOperationListener(final TabOperationListener listener) {
+    operationListeners.add(listener);
+  }
+
+  public void removeTabOperationListener(final TabOperationListener listener) {
+    operationListeners.remove(listener);
+  }
+
+  /**
+   * Sets the time, in milliseconds, after which an operation running on the
+   * event dispatch thread is considered a stall. The stack of the event
+   * dispatch thread is then sampled from a watchdog thread, and attached to the
+   * {@link TabOperationEvent} of the operation. 0, the default, disables the
+   * watchdog.
+   */
+  public void setStallThreshold(final long stallThreshold) {
+    if (stallThreshold < 0) {
+      throw new IllegalArgumentException("Negative stall threshold: " + stallThreshold);
+    }
+    this.stallThreshold = stallThreshold;
+  }
+
+  public long getStallThreshold() {
+    return stallThreshold;
+  }
+
+  /*
+   * Returns the start time of the operation, or 0 if it isn't traced. Only the
+   * outermost operation is traced.
+   */
+  private long beginOperation() {
+    if (tracingOperation || operationListeners.isEmpty()) {
+      return 0;
+    }
+    tracingOperation = true;
+    if ((stallThreshold > 0) && SwingUtilities.isEventDispatchThread()) {
+      stallSampler = new StallSampler(Thread.currentThread());
+      StallSampler.WATCHDOG.schedule(stallSampler, stallThreshold);
+    }
+    return System.nanoTime();
+  }
+
+  /* Reports an operation on the subtree of the tab */
+  private void endOperation(final long start, final TabOperationEvent.Type type, final Tab tab) {
+    if (start != 0) {
+      endOperation(start, type, tab, tabTree.getSubtreeSize(tab));
+    }
+  }
+
+  private void endOperation(final long start, final TabOperationEvent.Type type, final Tab tab, final int subtreeSize) {
+    if (start == 0) {
+      return;
+    }
+    final long duration = System.nanoTime() - start;
+    tracingOperation = false;
+    StackTraceElement[] stallStackTrace = null;
+    if (stallSampler != null) {
+      stallSampler.cancel();
+      stallStackTrace = stallSampler.stackTrace;
+      stallSampler = null;
+    }
+    final TabOperationEvent event = new TabOperationEvent(this, type, tab, tabTree.size(), subtreeSize, duration,
+        stallStackTrace);
+    for (final TabOperationListener listener : operationListeners) {
+      listener.operationPerformed(event);
+    }
+  }
+
+  /* Samples the stack of a thread once the stall threshold has elapsed */
+  private static final class StallSampler extends TimerTask {
+    private static final Timer WATCHDOG = new Timer("htabs-stall-watchdog", true);
+
+    private final Thread thread;
+    private volatile StackTraceElement[] stackTrace = null;
+
+    StallSampler(final Thread thread) {
+      this.thread = thread;
+    }
+
+    @Override
+    public void run() {
+      stackTrace = thread.getStackTrace();
+    }
+  }
+
+  /**
+   * Starts a batch of updates. Until the matching {@link #endUpdate()} the
+   * changes made to the tab hierarchy are only recorded in the tree. When the
+   * outermost batch ends, the tabbed pane is brought in sync with the tree in a
+   * single pass, with a single layout and a single <code>ChangeEvent</code>.
+   * The pages are then laid out in the order of the tree.
+   */
+  public void beginUpdate() {
+    updateDepth++;
+  }
+
+  /**
+   * Ends a batch of updates started with {@link #beginUpdate()}.
+   */
+  public void endUpdate() {
+    if (updateDepth <= 0) {
+      throw new IllegalStateException("endUpdate() called without a matching beginUpdate()");
+    }
+    updateDepth--;
+    if ((updateDepth == 0) && pagesOutOfSync) {
+      pagesOutOfSync = false;
+      requestPageSync();
+    }
+  }
+
+  /**
+   * Runs the given updates as a single batch. See {@link #beginUpdate()}.
+   */
+  public void batch(final Runnable updates) {
+    beginUpdate();
+    try {
+      updates.run();
+    } finally {
+      endUpdate();
+    }
+  }
+
+  public boolean isUpdating() {
+    return updateDepth > 0;
+  }
+
+  /**
+   * Returns <code>true</code> if the change to the tree has to be deferred till
+   * the end of the current batch.
+   */
+  private boolean deferPageUpdate() {
+    if ((updateDepth > 0) || (pagePlanner != null)) {
+      pagesOutOfSync = true;
+      return true;
+    }
+    return false;
+  }
+
+  private boolean isVerticalPlacement() {
+    final int placement = this.tabbedPane.getTabPlacement();
+    return (placement == SwingConstants.LEFT) || (placement == SwingConstants.RIGHT);
+  }
+
+  /**
+   * Makes the pages of the tabbed pane mirror the tab tree. Pages which don't
+   * belong to a tab of this manager are left alone.
+   */
+  private void syncPages() {
+    final PagePlan<Tab> plan = capturePagePlan();
+    plan.compute();
+    applyPagePlan(plan);
+  }
+
+  /**
+   * Syncs the pages right away, or in the background when background page sync
+   * is enabled.
+   */
+  private void requestPageSync() {
+    if (!backgroundPageSync) {
+      syncPages();
+      return;
+    }
+    if (pagePlanner != null) {
+      pagePlanner.cancel(false);
+    }
+    pagesOutOfSync = false;
+    final PagePlan<Tab> plan = capturePagePlan();
+    final SwingWorker<PagePlan<Tab>, Void> planner = new SwingWorker<PagePlan<Tab>, Void>() {
+      @Override
+      protected PagePlan<Tab> doInBackground() {
+        plan.compute();
+        return plan;
+      }
+
+      @Override
+      protected void done() {
+        if (pagePlanner != this) {
+          return;
+        }
+        pagePlanner = null;
+        if (updateDepth > 0) {
+          pagesOutOfSync = true;
+        } else {
+          final boolean changed = pagesOutOfSync;
+          pagesOutOfSync = false;
+          if (changed || isCancelled() || !applyPagePlan(plan)) {
+            syncPages();
+          }
+        }
+      }
+    };
+    pagePlanner = planner;
+    planner.execute();
+  }
+
+  /* Copies the rows of the tree and the tabs of the pages */
+  private PagePlan<Tab> capturePagePlan() {
+    final int[] levels = new int[tabTree.getRowCount()];
+    final List<Tab> rows = tabTree.getRows(levels);
+    final int pageCount = tabbedPane.getTabCount();
+    final List<Tab> pages = new ArrayList<>(pageCount);
+    final boolean[] managed = new boolean[pageCount];
+    for (int i = 0; i < pageCount; i++) {
+      managed[i] = isManagedPage(i);
+      pages.add(managed[i] ? getTabAt(i) : null);
+    }
+    return new PagePlan<>(rows, levels, pages, managed, getTabIndent(1), structureGeneration);
+  }
+
+  /**
+   * Applies the plan, unless the pages or the tree changed since it was
+   * captured. The indents computed by the plan are kept for the layout.
+   */
+  private boolean applyPagePlan(final PagePlan<Tab> plan) {
+    if (plan.getGeneration() != structureGeneration) {
+      return false;
+    }
+    beginPageUpdate();
+    try {
+      for (final int index : plan.getRemovals()) {
+        removePage(index);
+      }
+      final int[] insertionIndexes = plan.getInsertionIndexes();
+      final List<Tab> insertions = plan.getInsertions();
+      for (int i = 0; i < insertionIndexes.length; i++) {
+        addTab(insertions.get(i), insertionIndexes[i]);
+      }
+    } finally {
+      endPageUpdate();
+    }
+    if (plan.getIndents().length == tabbedPane.getTabCount()) {
+      tabIndents = plan.getIndents();
+      tabIndentsGeneration = structureGeneration;
+    }
+    return true;
+  }
+
+  /**
+   * Enables or disables background page sync. When enabled, the pages changed
+   * by a batch of updates (see {@link #beginUpdate()}) or by a switch of the tab
+   * placement are not brought in line with the tree when the batch ends:
+   * instead the order of the pages and their indents are planned on a
+   * background thread, from copies of the rows of the tree and of the pages,
+   * and only the planned insertions and removals are done on the event
+   * dispatch thread. Changes made meanwhile are deferred, and if the tree or
+   * the pages changed before the plan is applied, the pages are synced right
+   * away instead. Worth enabling when large batches restructure the tree.
+   */
+  public void setBackgroundPageSync(final boolean backgroundPageSync) {
+    this.backgroundPageSync = backgroundPageSync;
+    if (!backgroundPageSync) {
+      flushPageSync();
+    }
+  }
+
+  public boolean isBackgroundPageSync() {
+    return backgroundPageSync;
+  }
+
+  /**
+   * Returns <code>true</code> while the pages are waiting for a plan computed in
+   * the background.
+   */
+  public boolean isPageSyncPending() {
+    return pagePlanner != null;
+  }
+
+  /**
+   * Brings the pages in line with the tree right away if a plan is pending in
+   * the background.
+   */
+  public void flushPageSync() {
+    if (pagePlanner != null) {
+      pagePlanner.cancel(false);
+      pagePlanner = null;
+      if (updateDepth > 0) {
+        pagesOutOfSync = true;
+      } else {
+        pagesOutOfSync = false;
+        syncPages();
+      }
+    }
+  }
+
+  /* Coalesces the layouts and change events of a run of page updates */
+  void beginPageUpdate() {
+    if (tabbedPane instanceof CustomTabbedPane) {
+      ((CustomTabbedPane) tabbedPane).beginUpdate();
+    }
+  }
+
+  void endPageUpdate() {
+    if (tabbedPane instanceof CustomTabbedPane) {
+      ((CustomTabbedPane) tabbedPane).endUpdate();
+    }
+  }
+
+  /* Total time spent laying out the tabbed pane, or -1 if it isn't measured */
+  long getPageLayoutNanos() {
+    return tabbedPane instanceof CustomTabbedPane ? ((CustomTabbedPane) tabbedPane).getLayoutNanos() : -1;
+  }
+
+  /**
+   * Returns the position among the root tabs for a root tab whose page is
+   * inserted at the given index, keeping the order of the roots consistent
+   * with the order of their pages.
+   */
+  private int getRootIndexForPage(final int pageIndex) {
+    if (pageIndex >= 0) {
+      final int tabCount = tabbedPane.getTabCount();
+      for (int i = pageIndex; i < tabCount; i++) {
+        final Tab next = getTabAt(i);
+        if ((next != null) && (next.getParent() == null)) {
+          return tabTree.getIndexInParent(next);
+        }
+      }
+    }
+    return -1;
   }
 
   public Tab addTab(final String tabTitle, final Icon tabIcon, final Component tabComponent,
       final Component tabContentPane, final String toolTip, final int index) {
-    final Tab childTab = new Tab(tabTitle, tabIcon, tabComponent, tabContentPane, toolTip, null);
-    this.tabs.add(childTab);
-    int newIndex = index;
-    if (index == -1) {
-      final Component addedComponent = tabbedPane.add(tabContentPane);
-      newIndex = tabbedPane.indexOfComponent(addedComponent);
-    }
-    tabbedPane.insertTab(tabTitle, tabIcon, tabContentPane, toolTip, newIndex);
-    tabbedPane.setTabComponentAt(newIndex, childTab.tabComponent);
+    final Tab childTab = new Tab(tabTitle, tabIcon, tabComponent, tabContentPane, toolTip);
+    final long start = beginOperation();
+    try {
+      registerTab(childTab);
+      rootPageIndex = index == -1 ? tabbedPane.getTabCount() : index;
+      try {
+        tabTree.insert(null, getRootIndexForPage(index), childTab);
+      } finally {
+        rootPageIndex = -1;
+      }
+    } finally {
+      endOperation(start, TabOperationEvent.Type.ADD, childTab, 1);
+    }
     return childTab;
   }
 
@@ -113,6 +737,18 @@ public class TabManager {
     return addTab(tabTitle, tabIcon, tabComponent, tabContentPane, toolTip, -1);
   }
 
+  /**
+   * Adds a tab whose content pane is created by the given factory when the tab
+   * is selected for the first time. Until then, a lightweight placeholder is
+   * used as the content pane.
+   */
+  public Tab addTab(final String tabTitle, final Icon tabIcon, final Component tabComponent,
+      final TabContentFactory contentFactory, final String toolTip) {
+    final Tab tab = addTab(tabTitle, tabIcon, tabComponent, new ContentPlaceholder(), toolTip);
+    tab.setTabContentFactory(contentFactory);
+    return tab;
+  }
+
   public Tab addTab(final Component tabContentPane) {
     return addTab(null, null, null, tabContentPane, null);
   }
@@ -121,138 +757,1569 @@ public class TabManager {
     return addTab(null, null, tabComponent, tabContentPane, null);
   }
 
-  public Tab addTab(final Component tabContentPane, final int index) {
-    return addTab(null, null, null, tabContentPane, null, index);
+  public Tab addTab(final Component tabContentPane, final int index) {
+    return addTab(null, null, null, tabContentPane, null, index);
+  }
+
+  public Tab addTab(final String tabTitle, final Component tabContentPane) {
+    return addTab(tabTitle, null, null, tabContentPane, null);
+  }
+
+  public Tab addTab(final String tabTitle, final Icon tabIcon, final Component tabContentPane) {
+    return addTab(tabTitle, tabIcon, null, tabContentPane, null);
+  }
+
+  public Tab addTab(final String tabTitle, final Icon tabIcon, final Component tabContentPane, final String toolTip) {
+    return addTab(tabTitle, tabIcon, null, tabContentPane, toolTip);
+  }
+
+  public Tab addTab(final Component tabComponent, final Component tabContentPane, final String toolTip) {
+    return addTab(null, null, tabComponent, tabContentPane, toolTip);
+  }
+
+  /**
+   * Adds the tab as the last root tab and inserts its page, or inserts the page
+   * when the current batch ends. Since the tab tree model, this is a complete
+   * insertion: it used to only register the tab, leaving the page to a
+   * separate call to {@link #addTab(Tab, int)}, which would now add a second
+   * page.
+   */
+  public void addTab(final Tab tab) {
+    final long start = beginOperation();
+    try {
+      registerTab(tab);
+      tabTree.insert(null, -1, tab);
+    } finally {
+      endOperation(start, TabOperationEvent.Type.ADD, tab, 1);
+    }
+  }
+
+  public void addTab(final Tab tab, final int index) {
+    final TabManagerStats stats = this.stats;
+    final long start = stats == null ? 0 : System.nanoTime();
+    if ((tab.tabComponent == null) && realizesAllHeaders()) {
+      bindHeader(tab, -1);
+    }
+    if (tab.tabComponent == null) {
+      tabbedPane.insertTab(null, tab.headerPlaceholder, tab.getTabContentPane(), tab.getToolTip(), index);
+      scheduleHeaderRefresh();
+    } else {
+      tabbedPane.insertTab(tab.getTabTitle(), tab.getPaintedIcon(), tab.getTabContentPane(), tab.getToolTip(), index);
+      tabbedPane.setTabComponentAt(index, tab.getTabComponentWrapperContainer());
+    }
+    final int pageIndex = index < 0 ? tabbedPane.getTabCount() - 1 : index;
+    for (int i = 0; i < recentPageIndexes.length; i++) {
+      if (recentPageIndexes[i] >= pageIndex) {
+        recentPageIndexes[i]++;
+      }
+    }
+    recentPageIndexes[1] = recentPageIndexes[0];
+    recentPageIndexes[0] = pageIndex;
+    if (stats != null) {
+      stats.insertPage.record(start);
+    }
+  }
+
+  private void removePage(final int index) {
+    final TabManagerStats stats = this.stats;
+    final long start = stats == null ? 0 : System.nanoTime();
+    tabbedPane.removeTabAt(index);
+    for (int i = 0; i < recentPageIndexes.length; i++) {
+      if (recentPageIndexes[i] >= index) {
+        recentPageIndexes[i] = recentPageIndexes[i] == index ? -1 : recentPageIndexes[i] - 1;
+      }
+    }
+    if (stats != null) {
+      stats.removePage.record(start);
+    }
+  }
+
+  /**
+   * Returns the tab whose page is at the given index of the tabbed pane, or
+   * <code>null</code> if the page isn't managed by this TabManager.
+   */
+  private Tab getTabAt(final int index) {
+    final Tab tab = getTabFromTabComponent(tabbedPane.getTabComponentAt(index));
+    return tab == null ? getTabFromTabContentPane(tabbedPane.getComponentAt(index)) : tab;
+  }
+
+  private int indexOfTab(final Tab tab) {
+    return tab.tabComponent == null ? tabbedPane.indexOfComponent(tab.tabContentPane) : tabbedPane.indexOfTabComponent(tab.tabComponent);
+  }
+
+  /* Looks for the page of the tab at and just before the pages inserted last, before scanning all the pages */
+  private int indexOfTabNearRecentPages(final Tab tab) {
+    final int pageCount = tabbedPane.getTabCount();
+    for (final int recent : recentPageIndexes) {
+      for (int i = recent; i >= Math.max(0, recent - 1); i--) {
+        if ((i < pageCount) && (getTabAt(i) == tab)) {
+          return i;
+        }
+      }
+    }
+    return indexOfTab(tab);
+  }
+
+  private boolean isManagedPage(final int index) {
+    return (tabbedPane.getTabComponentAt(index) instanceof TabComponentWrappingContainer)
+        || (tabbedPane.getIconAt(index) instanceof HeaderPlaceholder);
+  }
+
+  /**
+   * Enables or disables the virtualized mode. When virtualized, only the tab
+   * headers that intersect the scroll viewport of a
+   * {@link JTabbedPane#SCROLL_TAB_LAYOUT} tabbed pane are backed by real
+   * components, which are recycled as the tabs are scrolled. Headers that are
+   * out of view only reserve their space. With the wrap layout all the headers
+   * stay realized.
+   */
+  public void setVirtualized(final boolean virtualized) {
+    if (this.virtualized != virtualized) {
+      this.virtualized = virtualized;
+      if (!virtualized) {
+        headerPool.clear();
+      }
+      refreshHeaders();
+    }
+  }
+
+  public boolean isVirtualized() {
+    return this.virtualized;
+  }
+
+  private boolean realizesAllHeaders() {
+    return !virtualized && (headerRenderer == null);
+  }
+
+  /**
+   * Sets the renderer used to stamp the tab headers. Once a renderer is set, the
+   * tabs don't have header components of their own and the tab component
+   * passed while adding tabs is not displayed. Set <code>null</code> to go back
+   * to header components.
+   */
+  public void setTabHeaderRenderer(final TabHeaderRenderer renderer) {
+    if (renderer == headerRenderer) {
+      return;
+    }
+    if ((headerRenderer == null) && (renderer != null)) {
+      headerRendererPane = new HeaderRendererPane();
+      tabbedPane.add(headerRendererPane);
+      tabbedPane.addMouseListener(headerMouseHandler);
+      tabbedPane.addMouseMotionListener(headerMouseHandler);
+    } else if (renderer == null) {
+      tabbedPane.remove(headerRendererPane);
+      headerRendererPane = null;
+      tabbedPane.removeMouseListener(headerMouseHandler);
+      tabbedPane.removeMouseMotionListener(headerMouseHandler);
+      setHeaderMouseTarget(null);
+    }
+    headerRenderer = renderer;
+    structureChanged();
+    refreshHeaders();
+    tabbedPane.revalidate();
+    tabbedPane.repaint();
+  }
+
+  public TabHeaderRenderer getTabHeaderRenderer() {
+    return this.headerRenderer;
+  }
+
+  private void scheduleHeaderRefresh() {
+    if ((virtualized || (headerRenderer != null)) && !headerRefreshPending) {
+      headerRefreshPending = true;
+      SwingUtilities.invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          headerRefreshPending = false;
+          refreshHeaders();
+        }
+      });
+    }
+  }
+
+  private JViewport findHeaderViewport() {
+    if (tabbedPane.getTabLayoutPolicy() == JTabbedPane.SCROLL_TAB_LAYOUT) {
+      for (final Component c : tabbedPane.getComponents()) {
+        if (c instanceof JViewport) {
+          return (JViewport) c;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Binds headers to the tabs in view and releases the headers of tabs which
+   * went out of view.
+   */
+  private void refreshHeaders() {
+    if (refreshingHeaders || (updateDepth > 0)) {
+      return;
+    }
+    refreshingHeaders = true;
+    try {
+      final JViewport viewport = virtualized ? findHeaderViewport() : null;
+      if (viewport != headerViewport) {
+        if (headerViewport != null) {
+          headerViewport.removeChangeListener(headerViewportListener);
+        }
+        headerViewport = viewport;
+        if (headerViewport != null) {
+          headerViewport.addChangeListener(headerViewportListener);
+        }
+      }
+
+      if (headerRenderer != null) {
+        final JViewport rendererViewport = findHeaderViewport();
+        setHeaderMouseTarget(rendererViewport == null ? null : rendererViewport.getView());
+        for (final Tab tab : new ArrayList<>(tabsByTabComponent.values())) {
+          unbindHeader(tab, tabbedPane.indexOfTabComponent(tab.tabComponent));
+        }
+        return;
+      }
+
+      final int tabCount = tabbedPane.getTabCount();
+      int first = 0;
+      int last = tabCount - 1;
+      if (viewport != null) {
+        final Rectangle visible = viewport.getBounds();
+        final boolean vertical = isVerticalPlacement();
+        first = Math.max(0, findFirstVisibleTab(visible, vertical) - HEADER_OVERSCAN);
+        last = first - 1;
+        while ((last + 1 < tabCount) && isTabBefore(last + 1, visible, vertical)) {
+          last++;
+        }
+        last = Math.min(tabCount - 1, last + HEADER_OVERSCAN);
+      }
+
+      if (virtualized) {
+        final List<Tab> boundTabs = new ArrayList<>(tabsByTabComponent.values());
+        for (final Tab tab : boundTabs) {
+          final int index = tabbedPane.indexOfTabComponent(tab.tabComponent);
+          if ((index < first) || (index > last)) {
+            unbindHeader(tab, index);
+          }
+        }
+      }
+      for (int i = first; i <= last; i++) {
+        final Tab tab = getTabAt(i);
+        if ((tab != null) && (tab.tabComponent == null)) {
+          bindHeader(tab, i);
+        }
+      }
+    } finally {
+      refreshingHeaders = false;
+    }
+  }
+
+  /* Binary search for the first tab whose bounds end after the start of the visible region */
+  private int findFirstVisibleTab(final Rectangle visible, final boolean vertical) {
+    int low = 0;
+    int high = tabbedPane.getTabCount();
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      final Rectangle bounds = tabbedPane.getBoundsAt(mid);
+      final int end = vertical ? bounds.y + bounds.height : bounds.x + bounds.width;
+      if (end <= (vertical ? visible.y : visible.x)) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private boolean isTabBefore(final int index, final Rectangle visible, final boolean vertical) {
+    final Rectangle bounds = tabbedPane.getBoundsAt(index);
+    return vertical ? bounds.y < visible.y + visible.height : bounds.x < visible.x + visible.width;
+  }
+
+  private void bindHeader(final Tab tab, final int index) {
+    TabComponentWrappingContainer header = headerPool.poll();
+    if (header == null) {
+      header = new TabComponentWrappingContainer(tab.customTabComponent);
+    } else {
+      header.setTabComponent(tab.customTabComponent);
+    }
+    header.setCollapsed(tab.isCollapsed());
+    tab.tabComponent = header;
+    tabsByTabComponent.put(header, tab);
+    if (index >= 0) {
+      tabbedPane.setIconAt(index, tab.getPaintedIcon());
+      tabbedPane.setTitleAt(index, tab.tabTitle);
+      tabbedPane.setTabComponentAt(index, header);
+    }
+  }
+
+  private void unbindHeader(final Tab tab, final int index) {
+    final TabComponentWrappingContainer header = tab.tabComponent;
+    tab.headerPlaceholder.setSize(header.getPreferredSize());
+    if (index >= 0) {
+      tabbedPane.setTabComponentAt(index, null);
+      tabbedPane.setTitleAt(index, null);
+      tabbedPane.setIconAt(index, tab.headerPlaceholder);
+    }
+    tabsByTabComponent.remove(header);
+    tab.tabComponent = null;
+    header.releaseTabComponent();
+    if (headerPool.size() < HEADER_POOL_SIZE) {
+      headerPool.push(header);
+    }
+  }
+
+  /**
+   * Stamps the headers of the tabs intersecting the clip with the header
+   * renderer. Called by the tabbed pane UI after it has painted the tab area.
+   * The rectangles are in the coordinate space of the painted tab area.
+   */
+  public void paintTabHeaders(final Graphics g, final Rectangle[] rects, final int tabCount) {
+    if (headerRenderer == null) {
+      return;
+    }
+    final Rectangle clip = g.getClipBounds();
+    final int selectedIndex = tabbedPane.getSelectedIndex();
+    final Rectangle headerBounds = new Rectangle();
+    for (int i = 0; i < tabCount; i++) {
+      getHeaderBounds(rects[i], headerBounds);
+      if ((clip == null) || clip.intersects(headerBounds)) {
+        final Tab tab = getTabAt(i);
+        if (tab != null) {
+          final int zone = i == rolloverTabIndex ? rolloverZone : TabHeaderRenderer.ZONE_NONE;
+          final Component rendererComponent = headerRenderer.getTabHeaderRendererComponent(tabbedPane, tab,
+              getTabComponentIndent(tab.getTabLevel()), i == selectedIndex, showsCollapseControl(tab), zone);
+          headerRendererPane.paintComponent(g, rendererComponent, tabbedPane, headerBounds.x, headerBounds.y,
+              headerBounds.width, headerBounds.height, true);
+        }
+      }
+    }
+  }
+
+  /* As with the header components, in vertical placement the headers span from the start of the tab area */
+  private void getHeaderBounds(final Rectangle tabRect, final Rectangle headerBounds) {
+    headerBounds.setBounds(tabRect);
+    if (isVerticalPlacement()) {
+      headerBounds.width += headerBounds.x;
+      headerBounds.x = 0;
+    }
+  }
+
+  private boolean showsCollapseControl(final Tab tab) {
+    return (tabbedPane.getTabPlacement() == SwingConstants.LEFT) && (tabTree.getChildCount(tab) > 0);
+  }
+
+  /* The tab area is painted by the view of the scroll viewport in the scroll tab layout */
+  private void setHeaderMouseTarget(final Component target) {
+    if (target != headerMouseTarget) {
+      if (headerMouseTarget != null) {
+        headerMouseTarget.removeMouseListener(headerMouseHandler);
+        headerMouseTarget.removeMouseMotionListener(headerMouseHandler);
+      }
+      headerMouseTarget = target;
+      if (headerMouseTarget != null) {
+        headerMouseTarget.addMouseListener(headerMouseHandler);
+        headerMouseTarget.addMouseMotionListener(headerMouseHandler);
+      }
+    }
+  }
+
+  private void closeTab(final Tab tab) {
+    tab.removeSelf();
+    final int index = indexOfTab(tab);
+    if (index != -1) {
+      removePage(index);
+    }
+  }
+
+  private void toggleCollapsed(final Tab tab) {
+    if (tab.isCollapsed()) {
+      tab.expandTab();
+    } else {
+      tab.collapseTab();
+    }
+  }
+
+  /* Stands in for the content pane of a tab until its factory is invoked */
+  private static class ContentPlaceholder extends JComponent {
+    private static final long serialVersionUID = 1L;
+  }
+
+  private static class HeaderRendererPane extends CellRendererPane implements UIResource {
+    private static final long serialVersionUID = 1L;
+  }
+
+  private class HeaderMouseHandler extends MouseAdapter {
+
+    /* Returns the header zone at the event location; also records the tab index in rolloverTabIndex */
+    private int hitTest(final MouseEvent e) {
+      final Point panePoint = SwingUtilities.convertPoint(e.getComponent(), e.getPoint(), tabbedPane);
+      final int index = tabbedPane.indexAtLocation(panePoint.x, panePoint.y);
+      final Tab tab = index == -1 ? null : getTabAt(index);
+      if ((headerRenderer == null) || (tab == null)) {
+        return TabHeaderRenderer.ZONE_NONE;
+      }
+      final Component tabArea = headerMouseTarget == null ? tabbedPane : headerMouseTarget;
+      final Point point = SwingUtilities.convertPoint(tabbedPane, panePoint, tabArea);
+      final Rectangle headerBounds = new Rectangle();
+      getHeaderBounds(SwingUtilities.convertRectangle(tabbedPane, tabbedPane.getBoundsAt(index), tabArea), headerBounds);
+      return headerRenderer.getZoneAt(tab, getTabComponentIndent(tab.getTabLevel()), showsCollapseControl(tab),
+          headerBounds.width, headerBounds.height, point.x - headerBounds.x, point.y - headerBounds.y);
+    }
+
+    @Override
+    public void mouseClicked(final MouseEvent e) {
+      if (SwingUtilities.isLeftMouseButton(e)) {
+        final Point panePoint = SwingUtilities.convertPoint(e.getComponent(), e.getPoint(), tabbedPane);
+        final int index = tabbedPane.indexAtLocation(panePoint.x, panePoint.y);
+        final int zone = hitTest(e);
+        final Tab tab = index == -1 ? null : getTabAt(index);
+        /* While a background page sync is pending, the page may belong to a tab already removed */
+        if ((zone != TabHeaderRenderer.ZONE_NONE) && (tab != null)) {
+          setRollover(-1, TabHeaderRenderer.ZONE_NONE);
+          if (zone == TabHeaderRenderer.ZONE_CLOSE) {
+            closeTab(tab);
+          } else {
+            toggleCollapsed(tab);
+          }
+          e.consume();
+        }
+      }
+    }
+
+    @Override
+    public void mouseMoved(final MouseEvent e) {
+      final Point panePoint = SwingUtilities.convertPoint(e.getComponent(), e.getPoint(), tabbedPane);
+      final int index = tabbedPane.indexAtLocation(panePoint.x, panePoint.y);
+      setRollover(index, hitTest(e));
+    }
+
+    @Override
+    public void mouseExited(final MouseEvent e) {
+      setRollover(-1, TabHeaderRenderer.ZONE_NONE);
+    }
+
+    private void setRollover(final int index, final int zone) {
+      if ((index != rolloverTabIndex) || (zone != rolloverZone)) {
+        repaintTab(rolloverTabIndex);
+        rolloverTabIndex = index;
+        rolloverZone = zone;
+        repaintTab(rolloverTabIndex);
+      }
+    }
+
+    private void repaintTab(final int index) {
+      if ((index >= 0) && (index < tabbedPane.getTabCount())) {
+        tabbedPane.repaint(tabbedPane.getBoundsAt(index));
+      }
+    }
+  }
+
+  /**
+   * Reserves the space of a tab header which is not realized. Until the header
+   * has been realized once, the size is estimated from the tab component.
+   */
+  private class HeaderPlaceholder implements Icon {
+    private final Tab tab;
+    private int width = -1;
+    private int height = -1;
+
+    HeaderPlaceholder(final Tab tab) {
+      this.tab = tab;
+    }
+
+    void setSize(final Dimension size) {
+      this.width = size.width;
+      this.height = size.height;
+    }
+
+    @Override
+    public void paintIcon(final Component c, final Graphics g, final int x, final int y) {
+    }
+
+    @Override
+    public int getIconWidth() {
+      if ((headerRenderer != null) && !isVerticalPlacement()) {
+        return getRendererSize().width;
+      } else if ((headerRenderer == null) && (width >= 0)) {
+        return width;
+      } else if (isVerticalPlacement()) {
+        return TAB_BAR_WIDTH;
+      } else {
+        final Component component = tab.customTabComponent;
+        final int componentWidth = component == null ? 0 : component.getPreferredSize().width;
+        return componentWidth + (2 * COLLAPSE_BUTTON_TOTAL_WIDTH);
+      }
+    }
+
+    @Override
+    public int getIconHeight() {
+      if (headerRenderer != null) {
+        return getRendererSize().height;
+      } else if (height >= 0) {
+        return height;
+      } else {
+        final Component component = tab.customTabComponent;
+        final int componentHeight = component == null ? 0 : component.getPreferredSize().height;
+        return Math.max(componentHeight, COLLAPSE_BUTTON_WIDTH) + (2 * TabComponentWrappingContainer.MARGIN_VERT);
+      }
+    }
+
+    private Dimension getRendererSize() {
+      return headerRenderer.getTabHeaderRendererComponent(tabbedPane, tab, getTabComponentIndent(tab.getTabLevel()), false,
+          showsCollapseControl(tab), TabHeaderRenderer.ZONE_NONE).getPreferredSize();
+    }
+  }
+
+  private int tabIndent = INDENT;
+
+  public void setTabIndent(final int indent) {
+    tabIndent = indent;
+    structureChanged();
+  }
+
+  private int tabComponentIndent = INDENT;
+
+  public void setTabComponentIndent(final int indent) {
+    tabComponentIndent = indent;
+  }
+
+  /* Borders of the headers, indexed by their left inset and shared by the headers */
+  private Border[] headerBorders = new Border[0];
+
+  private Border getHeaderBorder(final int leftInset) {
+    if (leftInset >= headerBorders.length) {
+      headerBorders = Arrays.copyOf(headerBorders, Math.max(leftInset + 1, 2 * headerBorders.length));
+    }
+    Border border = headerBorders[leftInset];
+    if (border == null) {
+      border = BorderFactory.createEmptyBorder(TabComponentWrappingContainer.MARGIN_VERT, leftInset,
+          TabComponentWrappingContainer.MARGIN_VERT, 0);
+      headerBorders[leftInset] = border;
+    }
+    return border;
+  }
+
+  private int getTabIndent(final int tabLevel) {
+    final int placement = this.tabbedPane.getTabPlacement();
+    return ((placement == SwingConstants.LEFT) || (placement == SwingConstants.RIGHT)) ? tabLevel * tabIndent : 0;
+  }
+
+  private int getTabComponentIndent(final int tabLevel) {
+    final int placement = this.tabbedPane.getTabPlacement();
+    return ((placement == SwingConstants.LEFT) || (placement == SwingConstants.RIGHT)) ? tabLevel * tabComponentIndent : 0;
+  }
+
+  private int getTabComponentIndent(final Component tabComponent) {
+    final Tab tab = getTabFromTabComponent(tabComponent);
+    final int tabLevel = getTabLevel(tab);
+    return getTabComponentIndent(tabLevel);
+  }
+
+  private int getTabLevel(final Tab tab) {
+    return tab == null ? 0 : tab.getTabLevel();
+  }
+
+  /**
+   * Returns the tab of the selected page. While a background page sync is
+   * pending (see {@link #setBackgroundPageSync(boolean)}) the pages lag behind
+   * the tree, so this returns <code>null</code> when the selected page belongs
+   * to a tab that was already removed; call {@link #flushPageSync()} first to
+   * get the tab as the tree stands.
+   */
+  public Tab getActiveTab() {
+    final Component tabContentPane = tabbedPane.getSelectedComponent();
+    return getTabFromTabContentPane(tabContentPane);
+  }
+
+  /**
+   * Returns the tab with the given key, or <code>null</code>. See
+   * {@link Tab#setKey(Object)}.
+   */
+  public Tab getTabByKey(final Object key) {
+    return tabsByKey.get(key);
+  }
+
+  public Tab getTabFromTabContentPane(final Component tabContentPane) {
+    final TabManagerStats stats = this.stats;
+    if (stats == null) {
+      return tabContentPane == null ? null : tabsByTabContentPane.get(tabContentPane);
+    }
+    final long start = System.nanoTime();
+    final Tab tab = tabContentPane == null ? null : tabsByTabContentPane.get(tabContentPane);
+    stats.tabLookup.record(start);
+    return tab;
+  }
+
+  public Tab getTabFromTabComponent(final Component tabComponent) {
+    final TabManagerStats stats = this.stats;
+    if (stats == null) {
+      return tabComponent == null ? null : tabsByTabComponent.get(tabComponent);
+    }
+    final long start = System.nanoTime();
+    final Tab tab = tabComponent == null ? null : tabsByTabComponent.get(tabComponent);
+    stats.tabLookup.record(start);
+    return tab;
+  }
+
+  private void registerTab(final Tab tab) {
+    if (tab.tabComponent != null) {
+      tabsByTabComponent.put(tab.tabComponent, tab);
+    }
+    if (tab.tabContentPane != null) {
+      tabsByTabContentPane.put(tab.tabContentPane, tab);
+    }
+    if (tab.key != null) {
+      tabsByKey.put(tab.key, tab);
+    }
+    touchTabContent(tab);
+    if (titleIndex != null) {
+      titleIndex.put(tab, tab.getTabTitle(), tab.getToolTip());
+    }
+  }
+
+  private void unregisterTab(final Tab tab) {
+    if (tab.tabComponent != null) {
+      tabsByTabComponent.remove(tab.tabComponent);
+    }
+    if ((tab.tabContentPane != null) && (tabsByTabContentPane.get(tab.tabContentPane) == tab)) {
+      tabsByTabContentPane.remove(tab.tabContentPane);
+    }
+    if ((tab.key != null) && (tabsByKey.get(tab.key) == tab)) {
+      tabsByKey.remove(tab.key);
+    }
+    forgetTabContent(tab);
+    if (titleIndex != null) {
+      titleIndex.remove(tab);
+    }
+  }
+
+  /**
+   * Sets the hooks used to hibernate and restore the content panes of the least
+   * recently used tabs. Content panes are only discarded when a handler is set
+   * and either {@link #setMaxRealizedTabs(int)} or
+   * {@link #setContentMemoryBudget(long)} is exceeded. The header of a
+   * hibernated tab and its position in the hierarchy are left intact.
+   */
+  public void setHibernationHandler(final TabHibernationHandler handler) {
+    this.hibernationHandler = handler;
+    measureTabContents();
+    evictTabContents();
+  }
+
+  /**
+   * Sets the maximum number of tabs whose content panes are kept.
+   */
+  public void setMaxRealizedTabs(final int maxRealizedTabs) {
+    this.maxRealizedTabs = maxRealizedTabs;
+    evictTabContents();
+  }
+
+  /**
+   * Sets the maximum memory, in bytes, estimated by the hibernation handler for
+   * the content panes that are kept.
+   */
+  public void setContentMemoryBudget(final long contentMemoryBudget) {
+    this.contentMemoryBudget = contentMemoryBudget;
+    measureTabContents();
+    evictTabContents();
+  }
+
+  /**
+   * Sets the maximum memory, in bytes, taken by the cached rasters of the tab
+   * icons. A budget of 0 disables the cache.
+   */
+  public void setIconCacheBudget(final long iconCacheBudget) {
+    iconRasterCache.setBudget(iconCacheBudget);
+  }
+
+  /**
+   * Discards the content pane of the given tab after calling the
+   * {@link TabHibernationHandler#hibernate(Tab)} hook. The content pane is
+   * restored when the tab is selected again.
+   */
+  public void hibernateTab(final Tab tab) {
+    if ((hibernationHandler == null) || !tab.isTabContentPaneRealized()) {
+      return;
+    }
+    final TabHibernationHandler handler = hibernationHandler;
+    handler.hibernate(tab);
+    final Component placeholder = new ContentPlaceholder();
+    final int index = tabbedPane.indexOfComponent(tab.tabContentPane);
+    tab.replaceTabContentPane(placeholder, new TabContentFactory() {
+      @Override
+      public Component createTabContentPane(final Tab restoredTab) {
+        return handler.restore(restoredTab);
+      }
+    });
+    if (index != -1) {
+      tabbedPane.setComponentAt(index, placeholder);
+    }
+  }
+
+  private void measureTabContents() {
+    realizedContentSize = 0;
+    for (final Map.Entry<Tab, Long> entry : realizedTabs.entrySet()) {
+      final long size = estimateContentSize(entry.getKey());
+      entry.setValue(size);
+      realizedContentSize += size;
+    }
+  }
+
+  private long estimateContentSize(final Tab tab) {
+    return ((hibernationHandler == null) || (contentMemoryBudget == Long.MAX_VALUE)) ? 0 : hibernationHandler.estimateContentSize(tab);
+  }
+
+  /* Marks the content pane of the tab as the most recently used one */
+  private void touchTabContent(final Tab tab) {
+    if (!tab.isTabContentPaneRealized() || (tab.tabContentPane == null)) {
+      return;
+    }
+    final Long previousSize = realizedTabs.get(tab);
+    if (previousSize == null) {
+      final long size = estimateContentSize(tab);
+      realizedTabs.put(tab, size);
+      realizedContentSize += size;
+      evictTabContents();
+      scheduleStatsSample();
+    }
+  }
+
+  private void forgetTabContent(final Tab tab) {
+    final Long size = realizedTabs.remove(tab);
+    if (size != null) {
+      realizedContentSize -= size;
+      scheduleStatsSample();
+    }
+  }
+
+  private void evictTabContents() {
+    if (hibernationHandler == null) {
+      return;
+    }
+    final Component selectedComponent = tabbedPane.getSelectedComponent();
+    while ((realizedTabs.size() > maxRealizedTabs) || (realizedContentSize > contentMemoryBudget)) {
+      Tab leastRecentlyUsed = null;
+      for (final Tab tab : realizedTabs.keySet()) {
+        if (tab.tabContentPane != selectedComponent) {
+          leastRecentlyUsed = tab;
+          break;
+        }
+      }
+      if (leastRecentlyUsed == null) {
+        break;
+      }
+      hibernateTab(leastRecentlyUsed);
+      forgetTabContent(leastRecentlyUsed);
+    }
+  }
+
+  public void computeTabIndents(final int tabCount, final Rectangle[] rects) {
+    final TabManagerStats stats = this.stats;
+    final long start = stats == null ? 0 : System.nanoTime();
+    final int placement = tabbedPane.getTabPlacement();
+    if (placement == SwingConstants.LEFT) {
+      final int[] indents = getTabIndents(tabCount);
+      for (int tabIndex = 0; tabIndex < tabCount; tabIndex++) {
+        final int tabIndent = indents[tabIndex];
+        if (tabIndent >= 0) {
+          rects[tabIndex].x = tabIndent;
+          final int width = rects[tabIndex].width;
+          rects[tabIndex].width = width - tabIndent;
+        }
+      }
+    }
+    if (stats != null) {
+      stats.computeTabIndents.record(start);
+    }
+  }
+
+  /**
+   * Returns the indent of the tab at each index of the tabbed pane, or
+   * <code>-1</code> for the pages which are not managed by this TabManager. The
+   * table is rebuilt only when the structure has changed since it was last
+   * computed.
+   */
+  private int[] getTabIndents(final int tabCount) {
+    if ((tabIndentsGeneration != structureGeneration) || (tabIndents.length != tabCount)) {
+      if (tabIndents.length != tabCount) {
+        tabIndents = new int[tabCount];
+      }
+      for (int tabIndex = 0; tabIndex < tabCount; tabIndex++) {
+        final Tab tab = getTabAt(tabIndex);
+        tabIndents[tabIndex] = tab == null ? -1 : getTabIndent(tab.getTabLevel());
+      }
+      tabIndentsGeneration = structureGeneration;
+    }
+    return tabIndents;
+  }
+
+  /**
+   * Switches the placement of the tabs. The pages are brought in line with the
+   * new placement in a single pass over the tab tree, with a single layout of
+   * the tabbed pane: with a vertical placement the descendants of collapsed
+   * tabs are hidden, otherwise every tab has a page.
+   */
+  public void setTabPlacement(final int tabPlacement) {
+    if (tabPlacement == tabbedPane.getTabPlacement()) {
+      return;
+    }
+    final long start = beginOperation();
+    beginPageUpdate();
+    try {
+      tabbedPane.setTabPlacement(tabPlacement);
+      structureChanged();
+      tabTree.setCollapsedChildrenHidden(isVerticalPlacement());
+    } finally {
+      endPageUpdate();
+      endOperation(start, TabOperationEvent.Type.PLACEMENT, null, tabTree.size());
+    }
+  }
+
+  public void collapseAll() {
+    setAllCollapsed(true);
+  }
+
+  public void expandAll() {
+    setAllCollapsed(false);
+  }
+
+  private void setAllCollapsed(final boolean collapsed) {
+    final long start = beginOperation();
+    beginPageUpdate();
+    try {
+      for (final Tab root : tabTree.getRoots()) {
+        tabTree.setSubtreeCollapsed(root, collapsed);
+      }
+    } finally {
+      endPageUpdate();
+      endOperation(start, collapsed ? TabOperationEvent.Type.COLLAPSE : TabOperationEvent.Type.EXPAND, null,
+          tabTree.size());
+    }
+  }
+
+  /**
+   * Closes the tab along with all its descendants.
+   */
+  public void closeSubtree(final Tab tab) {
+    closeTabs(Collections.singleton(tab));
+  }
+
+  /**
+   * Closes the tabs along with all their descendants. The pages of each closed
+   * subtree are removed as one block, and the tabbed pane is laid out and
+   * notified of the selection change once for the whole operation.
+   */
+  public void closeTabs(final Collection<Tab> tabs) {
+    if (tabs.isEmpty()) {
+      return;
+    }
+    final long start = beginOperation();
+    int removedCount = 0;
+    beginPageUpdate();
+    try {
+      final List<Tab> removedTabs = tabTree.removeSubtrees(tabs);
+      removedCount = removedTabs.size();
+      for (final Tab tab : removedTabs) {
+        unregisterTab(tab);
+      }
+    } finally {
+      endPageUpdate();
+      endOperation(start, TabOperationEvent.Type.REMOVE, tabs.size() == 1 ? tabs.iterator().next() : null,
+          removedCount);
+    }
+  }
+
+  /**
+   * Moves the tab, along with its descendants, under a new parent, or among the
+   * root tabs when the parent is <code>null</code>. The child index is the
+   * position of the tab among the children of the new parent after the move;
+   * -1 appends it. The pages of the subtree are moved as one block, keeping
+   * their components, and the selection is preserved.
+   */
+  public void moveTab(final Tab tab, final Tab newParent, final int childIndex) {
+    final long start = beginOperation();
+    try {
+      tabTree.move(tab, newParent, childIndex);
+    } finally {
+      endOperation(start, TabOperationEvent.Type.MOVE, tab);
+    }
+  }
+
+  /**
+   * Returns at most <code>maxResults</code> tabs whose title or tool tip
+   * contains the query, ignoring case, best matches first: the tabs whose title
+   * starts with the query, then those with a word of the title starting with
+   * it, then those containing it in the title, then in the tool tip. The index
+   * used for the search is built on the first call, and kept up to date as
+   * tabs are added, removed and renamed.
+   */
+  public List<Tab> findTabs(final String query, final int maxResults) {
+    return getTitleIndex().search(query, maxResults);
+  }
+
+  /**
+   * Selects the best match of {@link #findTabs(String, int)}. Returns the
+   * selected tab, or <code>null</code> if no tab matches.
+   */
+  public Tab quickSwitch(final String query) {
+    final List<Tab> matches = findTabs(query, 1);
+    if (matches.isEmpty()) {
+      return null;
+    }
+    final Tab tab = matches.get(0);
+    selectTab(tab);
+    return tab;
+  }
+
+  /**
+   * Finds the tabs whose title, or else tool tip, contains the characters of
+   * the query in order, ignoring case. The matches are scored on a background
+   * thread, against a copy of the texts taken by this call, and handed to the
+   * handler on the event dispatch thread. Starting a new fuzzy search cancels
+   * the pending one.
+   */
+  public void findTabsFuzzy(final String query, final int maxResults, final TabSearchHandler handler) {
+    final TabTitleIndex.Snapshot<Tab> snapshot = getTitleIndex().snapshot();
+    if (fuzzySearch != null) {
+      fuzzySearch.cancel(false);
+    }
+    final SwingWorker<List<Tab>, Void> search = new SwingWorker<List<Tab>, Void>() {
+      @Override
+      protected List<Tab> doInBackground() {
+        return snapshot.fuzzySearch(query, maxResults);
+      }
+
+      @Override
+      protected void done() {
+        if (fuzzySearch == this) {
+          fuzzySearch = null;
+        }
+        if (isCancelled()) {
+          return;
+        }
+        final List<Tab> matches;
+        try {
+          matches = get();
+        } catch (final InterruptedException | ExecutionException e) {
+          throw new IllegalStateException("Couldn't search the tabs", e);
+        }
+        final List<Tab> liveMatches = new ArrayList<>(matches.size());
+        for (final Tab tab : matches) {
+          if (tabTree.contains(tab)) {
+            liveMatches.add(tab);
+          }
+        }
+        handler.tabsFound(query, liveMatches);
+      }
+    };
+    fuzzySearch = search;
+    search.execute();
+  }
+
+  /**
+   * Selects the best fuzzy match of the query, once the search running in the
+   * background is done. See
+   * {@link #findTabsFuzzy(String, int, TabSearchHandler)}.
+   */
+  public void quickSwitchFuzzy(final String query) {
+    findTabsFuzzy(query, 1, new TabSearchHandler() {
+      @Override
+      public void tabsFound(final String query, final List<Tab> tabs) {
+        if (!tabs.isEmpty()) {
+          selectTab(tabs.get(0));
+        }
+      }
+    });
+  }
+
+  /**
+   * Selects the page of the tab, expanding its collapsed ancestors first so
+   * that the tab has a page.
+   */
+  public void selectTab(final Tab tab) {
+    if (!tabTree.contains(tab)) {
+      throw new IllegalArgumentException("Tab is not managed by this TabManager");
+    }
+    beginPageUpdate();
+    try {
+      for (Tab ancestor = tab.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+        if (tabTree.isCollapsed(ancestor)) {
+          tabTree.setCollapsed(ancestor, false);
+        }
+      }
+    } finally {
+      endPageUpdate();
+    }
+    flushPageSync();
+    final int index = indexOfTab(tab);
+    if (index != -1) {
+      tabbedPane.setSelectedIndex(index);
+    }
+  }
+
+  private TabTitleIndex<Tab> getTitleIndex() {
+    if (titleIndex == null) {
+      titleIndex = new TabTitleIndex<>();
+      final ArrayDeque<Tab> stack = new ArrayDeque<>(tabTree.getRoots());
+      while (!stack.isEmpty()) {
+        final Tab tab = stack.pop();
+        titleIndex.put(tab, tab.getTabTitle(), tab.getToolTip());
+        stack.addAll(tabTree.getChildren(tab));
+      }
+    }
+    return titleIndex;
+  }
+
+  private void updateTitleIndex(final Tab tab) {
+    if ((titleIndex != null) && tabTree.contains(tab)) {
+      titleIndex.put(tab, tab.getTabTitle(), tab.getToolTip());
+    }
+  }
+
+  /**
+   * Writes a snapshot of the tab hierarchy: the structure, titles, tool tips
+   * and collapsed states of the tabs, which tab is selected, and a payload per
+   * tab provided by the handler. The tree is walked once and written as it
+   * goes. The stream is flushed but not closed. See {@link TabSnapshotWriter}.
+   */
+  public void saveSnapshot(final OutputStream out, final TabSnapshotHandler handler) throws IOException {
+    final TabSnapshotWriter writer = new TabSnapshotWriter(out);
+    final Tab activeTab = getActiveTab();
+    writer.writeHeader(tabTree.size());
+    final ArrayDeque<Tab> stack = new ArrayDeque<>();
+    pushReversed(stack, tabTree.getRoots());
+    while (!stack.isEmpty()) {
+      final Tab tab = stack.pop();
+      final List<Tab> children = tabTree.getChildren(tab);
+      writer.writeTab(tab.getTabTitle(), tab.getToolTip(), tabTree.isCollapsed(tab), tab == activeTab,
+          children.size(), handler.savePayload(tab));
+      pushReversed(stack, children);
+    }
+    writer.finish();
+  }
+
+  /**
+   * Restores the tabs of a snapshot written by
+   * {@link #saveSnapshot(OutputStream, TabSnapshotHandler)}, after the existing
+   * root tabs, and selects the tab which was selected. The snapshot is read in
+   * full before the tree is touched, then inserted in one step, and the pages
+   * are added in a single batch. The content panes are created by the handler
+   * when the tabs are first selected.
+   */
+  public void restoreSnapshot(final InputStream in, final TabSnapshotHandler handler) throws IOException {
+    final TabSnapshotReader reader = new TabSnapshotReader(in);
+    final int tabCount = reader.readHeader();
+    final int capacity = Math.min(tabCount, TabSnapshotReader.MAX_INITIAL_CAPACITY);
+    final List<Tab> tabs = new ArrayList<>(capacity);
+    int[] levels = new int[capacity];
+    boolean[] collapsed = new boolean[capacity];
+    Tab selectedTab = null;
+    while (reader.next()) {
+      final Tab tab = createRestoredTab(reader.getTitle(), reader.getToolTip(), reader.getPayload(), handler);
+      final int index = tabs.size();
+      if (index == levels.length) {
+        levels = Arrays.copyOf(levels, Math.max(16, index * 2));
+        collapsed = Arrays.copyOf(collapsed, levels.length);
+      }
+      levels[index] = reader.getLevel();
+      collapsed[index] = reader.isCollapsed();
+      tabs.add(tab);
+      if (reader.isSelected()) {
+        selectedTab = tab;
+      }
+    }
+
+    beginUpdate();
+    try {
+      for (final Tab tab : tabs) {
+        registerTab(tab);
+      }
+      tabTree.insertTabs(null, -1, tabs, levels, collapsed);
+    } finally {
+      endUpdate();
+    }
+    if (selectedTab != null) {
+      selectTab(selectedTab);
+    }
+  }
+
+  /**
+   * Restores the tabs of a snapshot in chunks, across successive turns of the
+   * event dispatch thread, so that the window stays responsive. The snapshot is
+   * read on a background thread first. The tab which was selected is restored
+   * and selected in the first chunk, and the restore then grows outwards from
+   * it in the depth first order of the snapshot. The chunks are sized to take
+   * about 8 ms each. See
+   * {@link #restoreSnapshotInChunks(InputStream, TabSnapshotHandler, TabRestoreListener, long)}.
+   */
+  public TabRestore restoreSnapshotInChunks(final InputStream in, final TabSnapshotHandler handler,
+      final TabRestoreListener listener) {
+    return restoreSnapshotInChunks(in, handler, listener, DEFAULT_RESTORE_FRAME_BUDGET);
+  }
+
+  /**
+   * Restores the tabs of a snapshot in chunks taking about
+   * <code>frameBudget</code> milliseconds of the event dispatch thread each.
+   * The listener, which may be <code>null</code>, is notified on the event
+   * dispatch thread after every chunk. The returned handle can cancel the
+   * restore; the tabs restored so far are kept.
+   */
+  public TabRestore restoreSnapshotInChunks(final InputStream in, final TabSnapshotHandler handler,
+      final TabRestoreListener listener, final long frameBudget) {
+    if (frameBudget <= 0) {
+      throw new IllegalArgumentException("Frame budget must be positive: " + frameBudget);
+    }
+    final TabRestore restore = new TabRestore(this, handler, listener, frameBudget * 1000000);
+    restore.start(in);
+    return restore;
+  }
+
+  /*
+   * Restores a single tab for a TabRestore. The tab is inserted with its
+   * collapsed state, before any of its children.
+   */
+  Tab restoreTab(final Tab parent, final int index, final String title, final String toolTip, final byte[] payload,
+      final boolean collapsed, final TabSnapshotHandler handler) {
+    final Tab tab = createRestoredTab(title, toolTip, payload, handler);
+    registerTab(tab);
+    tabTree.insertTabs(parent, index, Collections.singletonList(tab), new int[1], new boolean[] { collapsed });
+    return tab;
+  }
+
+  private Tab createRestoredTab(final String title, final String toolTip, final byte[] payload,
+      final TabSnapshotHandler handler) {
+    final Component tabComponent = handler.createTabComponent(title, toolTip, payload);
+    final Tab tab = new Tab(title, null, tabComponent, new ContentPlaceholder(), toolTip);
+    tab.contentFactory = new TabContentFactory() {
+      @Override
+      public Component createTabContentPane(final Tab restoredTab) {
+        return handler.createTabContentPane(restoredTab, payload);
+      }
+    };
+    return tab;
+  }
+
+  /**
+   * Makes the tab hierarchy match the snapshot with as few changes as possible.
+   * The tabs are matched to the nodes of the snapshot by key, see
+   * {@link Tab#setKey(Object)}:
+   * <ul>
+   * <li>the tab of a key that is already shown keeps its components, and is
+   * only moved, renamed, or collapsed or expanded as needed;</li>
+   * <li>tabs are added for the new keys, with the components created by the
+   * handler, and new subtrees are inserted in one step;</li>
+   * <li>the tabs whose key isn't in the snapshot, as well as the tabs without a
+   * key, are closed.</li>
+   * </ul>
+   * Among the children of a tab, the tabs which stay put are the longest run
+   * already in the order of the snapshot, so reordering a few siblings only
+   * moves those. The changes are made in a single batch, see
+   * {@link #beginUpdate()}, and the selected tab stays selected if it still has
+   * a page.
+   */
+  public void reconcile(final TreeSnapshot snapshot, final TabReconcileHandler handler) {
+    final long start = beginOperation();
+    final Tab activeTab = getActiveTab();
+    int changedCount = 0;
+    boolean tabsUpdated = false;
+    beginUpdate();
+    try {
+      final Set<Object> keys = new HashSet<>();
+      final Set<TreeSnapshot.Node> newSubtrees = findNewSubtrees(snapshot, keys);
+
+      /* Parents are placed before their children, so a tab is never moved under one of its descendants */
+      final ArrayDeque<TreeSnapshot.Node> pendingNodes = new ArrayDeque<>();
+      final ArrayDeque<Tab> pendingTabs = new ArrayDeque<>();
+      Tab parent = null;
+      List<TreeSnapshot.Node> nodes = snapshot.getRoots();
+      while (true) {
+        final Tab[] keptTabs = findKeptChildren(parent, nodes);
+        int position = 0;
+        final List<Tab> children = tabTree.getChildren(parent);
+        for (int i = 0; i < nodes.size(); i++) {
+          final TreeSnapshot.Node node = nodes.get(i);
+          Tab tab = keptTabs[i];
+          if (tab != null) {
+            while (children.get(position) != tab) {
+              position++;
+            }
+          } else {
+            tab = tabsByKey.get(node.getKey());
+            if (tab == null) {
+              if (newSubtrees.contains(node)) {
+                changedCount += insertNewSubtree(parent, position++, node, handler);
+                continue;
+              }
+              tab = createReconciledTab(node, handler);
+              registerTab(tab);
+              tabTree.insertTabs(parent, position, Collections.singletonList(tab), new int[1],
+                  new boolean[] { node.isCollapsed() });
+            } else {
+              if ((tabTree.getParent(tab) == parent) && (tabTree.getIndexInParent(tab) < position)) {
+                position--;
+              }
+              tabTree.move(tab, parent, position);
+            }
+            changedCount++;
+          }
+          position++;
+          if (updateReconciledTab(tab, node)) {
+            tabsUpdated = true;
+            if (keptTabs[i] != null) {
+              changedCount++;
+            }
+          }
+          if (!node.getChildren().isEmpty()) {
+            pendingNodes.add(node);
+            pendingTabs.add(tab);
+          }
+        }
+        if (pendingNodes.isEmpty()) {
+          break;
+        }
+        nodes = pendingNodes.remove().getChildren();
+        parent = pendingTabs.remove();
+      }
+
+      final List<Tab> closedTabs = new ArrayList<>();
+      final ArrayDeque<Tab> stack = new ArrayDeque<>(tabTree.getRoots());
+      while (!stack.isEmpty()) {
+        final Tab tab = stack.pop();
+        if ((tab.key == null) || !keys.contains(tab.key)) {
+          closedTabs.add(tab);
+        } else {
+          stack.addAll(tabTree.getChildren(tab));
+        }
+      }
+      if (!closedTabs.isEmpty()) {
+        for (final Tab tab : tabTree.removeSubtrees(closedTabs)) {
+          unregisterTab(tab);
+          changedCount++;
+        }
+      }
+    } finally {
+      endUpdate();
+      endOperation(start, TabOperationEvent.Type.RECONCILE, null, changedCount);
+    }
+    if (tabsUpdated) {
+      tabbedPane.repaint();
+    }
+    if ((activeTab != null) && (getActiveTab() != activeTab) && tabTree.contains(activeTab) && !isPageSyncPending()) {
+      final int index = indexOfTab(activeTab);
+      if (index != -1) {
+        tabbedPane.setSelectedIndex(index);
+      }
+    }
+  }
+
+  /**
+   * Collects the keys of the snapshot, and returns the nodes whose subtree has
+   * no key of an existing tab.
+   */
+  private Set<TreeSnapshot.Node> findNewSubtrees(final TreeSnapshot snapshot, final Set<Object> keys) {
+    final List<TreeSnapshot.Node> preOrder = new ArrayList<>(snapshot.size());
+    final ArrayDeque<TreeSnapshot.Node> stack = new ArrayDeque<>(snapshot.getRoots());
+    while (!stack.isEmpty()) {
+      final TreeSnapshot.Node node = stack.pop();
+      preOrder.add(node);
+      keys.add(node.getKey());
+      stack.addAll(node.getChildren());
+    }
+    final Set<TreeSnapshot.Node> newSubtrees = Collections.newSetFromMap(new IdentityHashMap<TreeSnapshot.Node, Boolean>());
+    for (int i = preOrder.size() - 1; i >= 0; i--) {
+      final TreeSnapshot.Node node = preOrder.get(i);
+      if (!tabsByKey.containsKey(node.getKey()) && newSubtrees.containsAll(node.getChildren())) {
+        newSubtrees.add(node);
+      }
+    }
+    return newSubtrees;
   }
 
-  public Tab addTab(final String tabTitle, final Component tabContentPane) {
-    return addTab(tabTitle, null, null, tabContentPane, null);
+  /**
+   * Returns, for each node, the child of the parent which stays in place for
+   * that node, or <code>null</code> when the tab of the node has to be inserted
+   * or moved.
+   */
+  private Tab[] findKeptChildren(final Tab parent, final List<TreeSnapshot.Node> nodes) {
+    final Map<Object, Integer> nodeIndexes = new HashMap<>();
+    for (int i = 0; i < nodes.size(); i++) {
+      nodeIndexes.put(nodes.get(i).getKey(), i);
+    }
+    final List<Tab> children = tabTree.getChildren(parent);
+    final Tab[] candidates = new Tab[children.size()];
+    final int[] candidateIndexes = new int[children.size()];
+    int candidateCount = 0;
+    for (final Tab child : children) {
+      final Integer index = child.key == null ? null : nodeIndexes.get(child.key);
+      if (index != null) {
+        candidates[candidateCount] = child;
+        candidateIndexes[candidateCount] = index;
+        candidateCount++;
+      }
+    }
+    final boolean[] kept = PagePlan.keepLongestIncreasing(candidateIndexes, candidateCount);
+    final Tab[] keptTabs = new Tab[nodes.size()];
+    for (int i = 0; i < candidateCount; i++) {
+      if (kept[i]) {
+        keptTabs[candidateIndexes[i]] = candidates[i];
+      }
+    }
+    return keptTabs;
   }
 
-  public Tab addTab(final String tabTitle, final Icon tabIcon, final Component tabContentPane) {
-    return addTab(tabTitle, tabIcon, null, tabContentPane, null);
+  private int insertNewSubtree(final Tab parent, final int index, final TreeSnapshot.Node subtree,
+      final TabReconcileHandler handler) {
+    final List<Tab> tabs = new ArrayList<>();
+    final List<TreeSnapshot.Node> nodes = new ArrayList<>();
+    final ArrayDeque<TreeSnapshot.Node> stack = new ArrayDeque<>();
+    stack.push(subtree);
+    while (!stack.isEmpty()) {
+      final TreeSnapshot.Node node = stack.pop();
+      nodes.add(node);
+      final List<TreeSnapshot.Node> children = node.getChildren();
+      for (int i = children.size() - 1; i >= 0; i--) {
+        stack.push(children.get(i));
+      }
+    }
+    final int[] levels = new int[nodes.size()];
+    final boolean[] collapsed = new boolean[nodes.size()];
+    final Map<TreeSnapshot.Node, Integer> nodeLevels = new IdentityHashMap<>();
+    nodeLevels.put(subtree, 0);
+    for (int i = 0; i < nodes.size(); i++) {
+      final TreeSnapshot.Node node = nodes.get(i);
+      levels[i] = nodeLevels.get(node);
+      collapsed[i] = node.isCollapsed();
+      for (final TreeSnapshot.Node child : node.getChildren()) {
+        nodeLevels.put(child, levels[i] + 1);
+      }
+      final Tab tab = createReconciledTab(node, handler);
+      registerTab(tab);
+      tabs.add(tab);
+    }
+    tabTree.insertTabs(parent, index, tabs, levels, collapsed);
+    return tabs.size();
   }
 
-  public Tab addTab(final String tabTitle, final Icon tabIcon, final Component tabContentPane, final String toolTip) {
-    return addTab(tabTitle, tabIcon, null, tabContentPane, toolTip);
+  private Tab createReconciledTab(final TreeSnapshot.Node node, final TabReconcileHandler handler) {
+    final Component tabComponent = handler.createTabComponent(node);
+    final Tab tab = new Tab(node.getTitle(), node.getIcon(), tabComponent, new ContentPlaceholder(), node.getToolTip());
+    tab.key = node.getKey();
+    tab.contentFactory = new TabContentFactory() {
+      @Override
+      public Component createTabContentPane(final Tab reconciledTab) {
+        return handler.createTabContentPane(reconciledTab, node);
+      }
+    };
+    return tab;
   }
 
-  public Tab addTab(final Component tabComponent, final Component tabContentPane, final String toolTip) {
-    return addTab(null, null, tabComponent, tabContentPane, toolTip);
+  /* Brings the title, tool tip, icon and collapsed state of the tab in line with the node */
+  private boolean updateReconciledTab(final Tab tab, final TreeSnapshot.Node node) {
+    boolean updated = false;
+    if (!Objects.equals(tab.tabTitle, node.getTitle())) {
+      tab.setTabTitle(node.getTitle());
+      updated = true;
+    }
+    if (!Objects.equals(tab.toolTip, node.getToolTip())) {
+      tab.setToolTip(node.getToolTip());
+      updated = true;
+    }
+    if (tab.tabIcon != node.getIcon()) {
+      tab.setTabIcon(node.getIcon());
+      updated = true;
+    }
+    if (tabTree.isCollapsed(tab) != node.isCollapsed()) {
+      tabTree.setCollapsed(tab, node.isCollapsed());
+      updated = true;
+    }
+    return updated;
   }
 
-  public void addTab(final Tab tab) {
-    tabs.add(tab);
+  private static void pushReversed(final ArrayDeque<Tab> stack, final List<Tab> tabs) {
+    for (int i = tabs.size() - 1; i >= 0; i--) {
+      stack.push(tabs.get(i));
+    }
   }
 
-  public void addTab(final Tab tab, final int index) {
-    tabbedPane.insertTab(tab.getTabTitle(), tab.getTabIcon(), tab.getTabContentPane(), tab.getToolTip(), index);
-    tabbedPane.setTabComponentAt(index, tab.getTabComponentWrapperContainer());
+  /**
+   * Returns the model of the tab hierarchy. The pages of the tabbed pane follow
+   * the changes of the model.
+   */
+  public TabTreeModel<Tab> getTabTreeModel() {
+    return tabTree;
   }
 
-  private int tabIndent = INDENT;
-
-  public void setTabIndent(final int indent) {
-    tabIndent = indent;
-  }
+  /*
+   * Applies the changes of the tab tree to the pages of the tabbed pane. During
+   * a batch the pages are brought in sync once, when the batch ends.
+   */
+  private class TabPagesUpdater implements TabTreeModelListener<Tab> {
 
-  private int tabComponentIndent = INDENT;
+    @Override
+    public void tabsInserted(final TabTreeModelEvent<Tab> e) {
+      structureChanged();
+      updateCollapseButton(e.getParentTab());
+      if (tabTree.getChildCount(e.getTab()) > 0) {
+        updateSubtreeHeaders(e.getTab());
+      }
+      if (!deferPageUpdate()) {
+        insertPages(e.getRows());
+      }
+    }
 
-  public void setTabComponentIndent(final int indent) {
-    tabComponentIndent = indent;
-  }
+    @Override
+    public void tabsRemoved(final TabTreeModelEvent<Tab> e) {
+      structureChanged();
+      updateCollapseButton(e.getParentTab());
+      if (!deferPageUpdate()) {
+        removePages(e.getRows());
+      }
+    }
 
-  private int getTabIndent(final int tabLevel) {
-    final int placement = this.tabbedPane.getTabPlacement();
-    return ((placement == SwingConstants.LEFT) || (placement == SwingConstants.RIGHT)) ? tabLevel * tabIndent : 0;
-  }
+    @Override
+    public void tabMoved(final TabTreeModelEvent<Tab> e) {
+      structureChanged();
+      updateCollapseButton(e.getPreviousParentTab());
+      updateCollapseButton(e.getParentTab());
+      if (!deferPageUpdate()) {
+        final Component selectedComponent = tabbedPane.getSelectedComponent();
+        beginPageUpdate();
+        try {
+          removePages(e.getPreviousRows());
+          insertPages(e.getRows());
+          if ((selectedComponent != null) && (tabbedPane.getSelectedComponent() != selectedComponent)
+              && (tabbedPane.indexOfComponent(selectedComponent) != -1)) {
+            tabbedPane.setSelectedComponent(selectedComponent);
+          }
+        } finally {
+          endPageUpdate();
+        }
+      }
+    }
 
-  private int getTabComponentIndent(final int tabLevel) {
-    final int placement = this.tabbedPane.getTabPlacement();
-    return ((placement == SwingConstants.LEFT) || (placement == SwingConstants.RIGHT)) ? tabLevel * tabComponentIndent : 0;
-  }
+    @Override
+    public void tabCollapsed(final TabTreeModelEvent<Tab> e) {
+      final TabManagerStats stats = TabManager.this.stats;
+      final long start = stats == null ? 0 : System.nanoTime();
+      structureChanged();
+      updateCollapsedState(e.getTab());
+      if (!deferPageUpdate() && !e.getRows().isEmpty()) {
+        beginPageUpdate();
+        try {
+          removePages(e.getRows());
+        } finally {
+          endPageUpdate();
+        }
+      }
+      if (stats != null) {
+        stats.collapse.record(start);
+      }
+    }
 
-  private int getTabComponentIndent(final Component tabComponent) {
-    final Tab tab = getTabFromTabComponent(tabs, tabComponent);
-    final int tabLevel = getTabLevel(tab);
-    return getTabComponentIndent(tabLevel);
-  }
+    @Override
+    public void tabExpanded(final TabTreeModelEvent<Tab> e) {
+      final TabManagerStats stats = TabManager.this.stats;
+      final long start = stats == null ? 0 : System.nanoTime();
+      structureChanged();
+      updateCollapsedState(e.getTab());
+      if (!deferPageUpdate() && !e.getRows().isEmpty()) {
+        beginPageUpdate();
+        try {
+          insertPages(e.getRows());
+        } finally {
+          endPageUpdate();
+        }
+      }
+      if (stats != null) {
+        stats.expand.record(start);
+      }
+    }
 
-  private static int getTabLevel(final Tab tab) {
-    return tab == null ? 0 : tab.tabLevel;
-  }
+    @Override
+    public void tabsChanged(final TabTreeModelEvent<Tab> e) {
+      structureChanged();
+    }
 
-  public Tab getActiveTab() {
-    final Component tabContentPane = tabbedPane.getSelectedComponent();
-    return getTabFromTabContentPane(tabs, tabContentPane);
-  }
+    @Override
+    public void treeStructureChanged(final TabTreeModelEvent<Tab> e) {
+      structureChanged();
+      if (updateDepth > 0) {
+        pagesOutOfSync = true;
+      } else {
+        requestPageSync();
+      }
+    }
 
-  private static Tab getTabFromTabComponent(final List<Tab> tabs, final Component tabComponent) {
-    if (tabs != null) {
-      for (final Tab t : tabs) {
-        if (t.tabComponent == tabComponent) {
-          return t;
+    private void updateCollapseButton(final Tab parent) {
+      if (parent != null) {
+        if (tabTree.getChildCount(parent) > 0) {
+          parent.showCollapseButton();
         } else {
-          final Tab ret = getTabFromTabComponent(t.children, tabComponent);
-          if (ret != null) {
-            return ret;
-          }
+          parent.hideCollapseButton();
         }
       }
     }
-    return null;
-  }
 
-  public Tab getTabFromTabContentPane(final Component tabContentPane) {
-    return getTabFromTabContentPane(tabs, tabContentPane);
-  }
+    /* Brings the headers of a subtree inserted in one step in line with the tree */
+    private void updateSubtreeHeaders(final Tab tab) {
+      final ArrayDeque<Tab> stack = new ArrayDeque<>();
+      stack.push(tab);
+      while (!stack.isEmpty()) {
+        final Tab t = stack.pop();
+        final List<Tab> children = tabTree.getChildren(t);
+        if (!children.isEmpty()) {
+          updateCollapseButton(t);
+          updateCollapsedState(t);
+          stack.addAll(children);
+        }
+      }
+    }
 
-  public Tab getTabFromTabComponent(final Component tabComponent) {
-    return getTabFromTabComponent(tabs, tabComponent);
-  }
+    private void updateCollapsedState(final Tab tab) {
+      if (tab.tabComponent != null) {
+        tab.tabComponent.setCollapsed(tab.isCollapsed());
+        tab.tabComponent.repaint();
+      }
+    }
 
-  private static Tab getTabFromTabContentPane(final List<Tab> tabs, final Component tabContentPane) {
-    if (tabs != null) {
-      for (final Tab t : tabs) {
-        if (t.tabContentPane == tabContentPane) {
-          return t;
-        } else {
-          final Tab ret = getTabFromTabContentPane(t.children, tabContentPane);
-          if (ret != null) {
-            return ret;
-          }
-        }
+    /* Inserts the pages of consecutive rows */
+    private void insertPages(final List<Tab> rows) {
+      if (rows.isEmpty()) {
+        return;
+      }
+      int index = rootPageIndex;
+      if (index < 0) {
+        final Tab before = tabTree.getRowBefore(rows.get(0));
+        index = before == null ? getFirstManagedPageIndex() : indexOfTabNearRecentPages(before) + 1;
+      }
+      for (final Tab tab : rows) {
+        addTab(tab, index++);
       }
     }
-    return null;
-  }
 
-  public void computeTabIndents(final int tabCount, final Rectangle[] rects) {
-    final int placement = tabbedPane.getTabPlacement();
-    if (placement == SwingConstants.LEFT) {
-      for (int tabIndex = 0; tabIndex < tabCount; tabIndex++) {
-        final Component tabComponent = this.tabbedPane.getTabComponentAt(tabIndex);
-        final Tab tab = getTabFromTabComponent(tabs, tabComponent);
-        if (tab != null) {
-          final int tabIndent = getTabIndent(tab.tabLevel);
-          rects[tabIndex].x = tabIndent;
-          final int width = rects[tabIndex].width;
-          rects[tabIndex].width = width - tabIndent;
+    /*
+     * Removes the pages of consecutive rows. The pages are usually contiguous,
+     * so the page of the next row is looked for where the previous one was.
+     */
+    private void removePages(final List<Tab> rows) {
+      int index = -1;
+      for (final Tab tab : rows) {
+        if ((index < 0) || (index >= tabbedPane.getTabCount()) || (getTabAt(index) != tab)) {
+          index = indexOfTab(tab);
+        }
+        if (index != -1) {
+          removePage(index);
         }
       }
     }
-  }
 
-  public void setTabPlacement(final int tabPlacement) {
-    tabbedPane.setTabPlacement(tabPlacement);
-    if (tabPlacement == SwingConstants.TOP) {
-      for (final Tab tab : tabs) {
-        tab.expandTabTree();
-      }
-    } else if (tabPlacement == SwingConstants.LEFT) {
-      for (final Tab tab : tabs) {
-        tab.restoreTabHierarchy();
+    private int getFirstManagedPageIndex() {
+      final int tabCount = tabbedPane.getTabCount();
+      for (int i = 0; i < tabCount; i++) {
+        if (isManagedPage(i)) {
+          return i;
+        }
       }
+      return tabCount;
     }
   }
 
@@ -266,6 +2333,14 @@ public class TabManager {
     private static final int MARGIN_VERT = 4;
     private static final int MARGIN_LEFT = 8;
 
+    /* The state the border and the preferred size of the wrapped component were
+     * last computed for. Ancestor events fire for every header whenever the
+     * strip scrolls, so they are only recomputed when this state changes. */
+    private int laidOutIndent = -1;
+    private int laidOutPlacement = -1;
+    private boolean laidOutCollapseGap = false;
+    private Component sizedComponent = null;
+
     public TabComponentWrappingContainer(final Component component) {
       setLayout(new BorderLayout(MARGIN, 0));
       collapseButton = new CollapseButton();
@@ -273,36 +2348,19 @@ public class TabManager {
       wrappedComponent = component;
 
       addAncestorListener(new AncestorListener() {
-
-        private void helper(final AncestorEvent event) {
-          final int indent = getComponentIndent() + MARGIN_LEFT;
-          final int tabPlacement = tabbedPane.getTabPlacement();
-          final TabComponentWrappingContainer c = (TabComponentWrappingContainer) event.getSource();
-          if ((!c.getHideableComponentWrapper().isVisible()) && (tabbedPane.getTabPlacement() == SwingConstants.LEFT)) {
-            setBorder(BorderFactory.createEmptyBorder(MARGIN_VERT, indent + COLLAPSE_BUTTON_TOTAL_WIDTH, MARGIN_VERT, 0));
-          } else {
-            setBorder(BorderFactory.createEmptyBorder(MARGIN_VERT, indent, MARGIN_VERT, 0));
-          }
-          if ((tabPlacement == SwingConstants.LEFT) || (tabPlacement == SwingConstants.RIGHT)) {
-            component.setPreferredSize(new Dimension(TAB_BAR_WIDTH - indent, component.getPreferredSize().height));
-          } else {
-            component.setPreferredSize(null);
-          }
-        }
-
         @Override
         public void ancestorRemoved(final AncestorEvent event) {
-          this.helper(event);
+          updateHeaderLayout();
         }
 
         @Override
         public void ancestorMoved(final AncestorEvent event) {
-          this.helper(event);
+          updateHeaderLayout();
         }
 
         @Override
         public void ancestorAdded(final AncestorEvent event) {
-          this.helper(event);
+          updateHeaderLayout();
         }
       });
       setOpaque(false);
@@ -311,8 +2369,14 @@ public class TabManager {
       add(new CloseButton(), BorderLayout.EAST);
     }
 
+    /**
+     * Returns the collapsed state of the tab this container is the header of.
+     * The state of the model is used, so that collapsing a whole subtree
+     * doesn't need to visit every header.
+     */
     public boolean isCollapsed() {
-      return this.collapsed;
+      final Tab tab = getTabFromTabComponent(this);
+      return tab == null ? this.collapsed : tab.isCollapsed();
     }
 
     public void setCollapsed(final boolean collapsed) {
@@ -324,15 +2388,53 @@ public class TabManager {
     }
 
     public void setTabComponent(final Component component) {
-      remove(wrappedComponent);
+      if (wrappedComponent != null) {
+        remove(wrappedComponent);
+      }
       wrappedComponent = component;
       add(wrappedComponent, BorderLayout.CENTER);
+      updateHeaderLayout();
+      repaint();
+    }
+
+    void releaseTabComponent() {
+      if (wrappedComponent != null) {
+        remove(wrappedComponent);
+        wrappedComponent = null;
+      }
+    }
+
+    /*
+     * Indents the header by the level of its tab, and with a vertical placement
+     * fits the wrapped component in the width of the tab bar.
+     */
+    private void updateHeaderLayout() {
+      final int indent = getComponentIndent() + MARGIN_LEFT;
       final int tabPlacement = tabbedPane.getTabPlacement();
-      if (tabPlacement == SwingConstants.LEFT || tabPlacement == SwingConstants.RIGHT) {
-        final int indent = getComponentIndent() + MARGIN_LEFT;
-        wrappedComponent.setPreferredSize(new Dimension(TAB_BAR_WIDTH - indent, component.getPreferredSize().height));
+      final boolean collapseGap = !hideableComponentWrapper.isVisible() && (tabPlacement == SwingConstants.LEFT);
+      final Component component = wrappedComponent;
+      if ((indent == laidOutIndent) && (tabPlacement == laidOutPlacement) && (collapseGap == laidOutCollapseGap)
+          && (component == sizedComponent)) {
+        return;
+      }
+      laidOutIndent = indent;
+      laidOutPlacement = tabPlacement;
+      laidOutCollapseGap = collapseGap;
+      sizedComponent = component;
+
+      setBorder(getHeaderBorder(collapseGap ? indent + COLLAPSE_BUTTON_TOTAL_WIDTH : indent));
+      if (component == null) {
+        return;
+      }
+      if ((tabPlacement == SwingConstants.LEFT) || (tabPlacement == SwingConstants.RIGHT)) {
+        final int width = TAB_BAR_WIDTH - indent;
+        final Dimension preferredSize = component.getPreferredSize();
+        if (!component.isPreferredSizeSet() || (preferredSize.width != width)) {
+          component.setPreferredSize(new Dimension(width, preferredSize.height));
+        }
+      } else if (component.isPreferredSizeSet()) {
+        component.setPreferredSize(null);
       }
-      repaint();
     }
 
     public JButton getCollapseButton() {
@@ -364,7 +2466,7 @@ public class TabManager {
       final int placement = tabbedPane.getTabPlacement();
       if (placement == SwingConstants.LEFT) {
         final Tab tab = getTabFromTabComponent(this);
-        if (tab.getChildren().size() > 0) {
+        if ((tab != null) && (tabTree.getChildCount(tab) > 0)) {
           showCollapseButton();
         } else {
           this.hideableComponentWrapper.setVisible(true);
@@ -382,14 +2484,9 @@ public class TabManager {
 
     private class CloseButton extends JButton {
       private static final long serialVersionUID = 1L;
-      private static final int CLOSE_BUTTON_SIZE = 8;
-      private static final int MARGIN_VERT = 4;
-      private static final int MARGIN_HORIZ = 4;
-      private final Color crossColor = new Color(100, 100, 100, 200);
-      private final Color rolloverColor = new Color(250, 50, 50, 200);
 
       CloseButton() {
-        final Dimension closeButtonDimension = new Dimension(CLOSE_BUTTON_SIZE + (2 * MARGIN_HORIZ), CLOSE_BUTTON_SIZE + (2 * MARGIN_VERT));
+        final Dimension closeButtonDimension = new Dimension(CLOSE_BUTTON_WIDTH, CLOSE_BUTTON_HEIGHT);
         setPreferredSize(closeButtonDimension);
         setMinimumSize(closeButtonDimension);
         setMaximumSize(closeButtonDimension);
@@ -408,12 +2505,9 @@ public class TabManager {
           @Override
           public void mouseClicked(final MouseEvent e) {
             final Component tabComponent = getParent();
-            final Tab tab = getTabFromTabComponent(tabs, tabComponent);
-            tab.removeSelf();
-            final int i = tabbedPane.indexOfTabComponent(getParent());
-
-            if (i != -1) {
-              tabbedPane.remove(i);
+            final Tab tab = getTabFromTabComponent(tabComponent);
+            if (tab != null) {
+              closeTab(tab);
             }
 
           }
@@ -444,29 +2538,13 @@ public class TabManager {
       @Override
       protected void paintComponent(final Graphics g) {
         super.paintComponent(g);
-        final Graphics2D g2 = (Graphics2D) g.create();
-        // TODO: This doesn't seem to make any visual difference
-        if (getModel().isPressed()) {
-          g2.translate(1, 1);
-        }
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2.setColor(crossColor);
-        if (getModel().isRollover()) {
-          g2.setColor(rolloverColor);
-          g2.fillRoundRect(0, 0, (2 * MARGIN_HORIZ) + CLOSE_BUTTON_SIZE, (2 * MARGIN_VERT) + CLOSE_BUTTON_SIZE, 5, 5);
-          g2.setColor(Color.WHITE);
-        }
-        g2.setStroke(new BasicStroke(1));
-        g2.drawLine(MARGIN_HORIZ, MARGIN_VERT, MARGIN_HORIZ + CLOSE_BUTTON_SIZE, MARGIN_VERT + CLOSE_BUTTON_SIZE);
-        g2.drawLine(MARGIN_HORIZ + CLOSE_BUTTON_SIZE, MARGIN_VERT, MARGIN_HORIZ, MARGIN_VERT + CLOSE_BUTTON_SIZE);
-        g2.dispose();
+        final int state = (getModel().isPressed() ? CLOSE_BUTTON_PRESSED : 0) | (getModel().isRollover() ? CLOSE_BUTTON_ROLLOVER : 0);
+        closeButtonSprites.paint((Graphics2D) g, 0, 0, state);
       }
     }
 
     private class CollapseButton extends JButton {
       private static final long serialVersionUID = 1L;
-      private final GeneralPath collapsedPolygon = makePolygon(true);
-      private final GeneralPath normalPolygon = makePolygon(false);
 
       CollapseButton() {
         final Dimension collapseButtomDimension = new Dimension(COLLAPSE_BUTTON_WIDTH, COLLAPSE_BUTTON_WIDTH);
@@ -488,11 +2566,9 @@ public class TabManager {
           @Override
           public void mouseClicked(final MouseEvent e) {
             final Component tabComponent = getParent().getParent();
-            final Tab tab = getTabFromTabComponent(tabs, tabComponent);
-            if (tab.isCollapsed()) {
-              tab.expandTab();
-            } else {
-              tab.collapseTab();
+            final Tab tab = getTabFromTabComponent(tabComponent);
+            if (tab != null) {
+              toggleCollapsed(tab);
             }
 
             repaint();
@@ -524,118 +2600,135 @@ public class TabManager {
       @Override
       protected void paintComponent(final Graphics g) {
         super.paintComponent(g);
-        final Graphics2D g2 = (Graphics2D) g.create();
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        g2.setStroke(new BasicStroke(2));
-        g2.setColor(Color.BLACK);
-
-        g2.fill(collapsed ? collapsedPolygon : normalPolygon);
-        g2.dispose();
+        collapseButtonSprites.paint((Graphics2D) g, 0, 0, isCollapsed() ? COLLAPSE_BUTTON_COLLAPSED : COLLAPSE_BUTTON_EXPANDED);
       }
+    }
+  }
 
-      private GeneralPath makePolygon(final boolean collapsed) {
-        final ArrayList<Integer> xPoints = new ArrayList<>();
-        final ArrayList<Integer> yPoints = new ArrayList<>();
-
-        if (collapsed) {
-          xPoints.add(0);
-          xPoints.add(6);
-          xPoints.add(0);
-          yPoints.add(2);
-          yPoints.add(8);
-          yPoints.add(14);
-        } else {
-          xPoints.add(0);
-          xPoints.add(6);
-          xPoints.add(12);
-          yPoints.add(6);
-          yPoints.add(12);
-          yPoints.add(6);
-        }
-        final GeneralPath polygon = new GeneralPath(Path2D.WIND_EVEN_ODD, xPoints.size());
-        polygon.moveTo(xPoints.get(0), yPoints.get(0));
-
-        for (int i = 1; i < xPoints.size(); i++) {
-          polygon.lineTo(xPoints.get(i), yPoints.get(i));
-        }
+  private static GeneralPath makeCollapsePolygon(final boolean collapsed) {
+    final ArrayList<Integer> xPoints = new ArrayList<>();
+    final ArrayList<Integer> yPoints = new ArrayList<>();
+
+    if (collapsed) {
+      xPoints.add(0);
+      xPoints.add(6);
+      xPoints.add(0);
+      yPoints.add(2);
+      yPoints.add(8);
+      yPoints.add(14);
+    } else {
+      xPoints.add(0);
+      xPoints.add(6);
+      xPoints.add(12);
+      yPoints.add(6);
+      yPoints.add(12);
+      yPoints.add(6);
+    }
+    final GeneralPath polygon = new GeneralPath(Path2D.WIND_EVEN_ODD, xPoints.size());
+    polygon.moveTo(xPoints.get(0), yPoints.get(0));
 
-        polygon.closePath();
-        return polygon;
-      }
+    for (int i = 1; i < xPoints.size(); i++) {
+      polygon.lineTo(xPoints.get(i), yPoints.get(i));
     }
+
+    polygon.closePath();
+    return polygon;
   }
 
   public class Tab {
-    private Tab parent;
-    final private ArrayList<Tab> children;
-    private final TabComponentWrappingContainer tabComponent;
+    private TabComponentWrappingContainer tabComponent;
+    private Component customTabComponent;
+    private final HeaderPlaceholder headerPlaceholder;
     private Component tabContentPane;
+    private TabContentFactory contentFactory;
     private String tabTitle;
     private Icon tabIcon;
+    /* The icon handed to the tabbed pane and the renderer, see getPaintedIcon() */
+    private Icon paintedIcon;
     private String toolTip;
-    private boolean collapsed = false;
-    private int tabLevel;
+    private Object key;
 
     Tab(final String tabTitle, final Icon tabIcon, final Component tabComponent, final Component tabContentPane,
-        final String toolTip, final Tab parent) {
+        final String toolTip) {
       this.tabTitle = tabTitle;
       this.tabIcon = tabIcon;
-      this.tabComponent = new TabComponentWrappingContainer(tabComponent);
+      this.paintedIcon = CachedIcon.wrap(tabIcon, iconRasterCache);
+      this.customTabComponent = tabComponent;
+      this.headerPlaceholder = new HeaderPlaceholder(this);
+      if (realizesAllHeaders()) {
+        this.tabComponent = new TabComponentWrappingContainer(tabComponent);
+      }
       this.tabContentPane = tabContentPane;
       this.toolTip = toolTip;
-      this.parent = parent;
-      this.children = new ArrayList<>();
-      this.tabLevel = parent == null ? 0 : parent.tabLevel + 1;
     }
 
-    Tab(final String tabTitle, final Icon tabIcon, final Component tabContentPane, final String toolTip,
-        final Tab parent) {
-      this(tabTitle, tabIcon, null, tabContentPane, toolTip, parent);
+    Tab(final String tabTitle, final Icon tabIcon, final Component tabContentPane, final String toolTip) {
+      this(tabTitle, tabIcon, null, tabContentPane, toolTip);
     }
 
-    Tab(final Component tabComponent, final Component tabContentPane, final String toolTip, final Tab parent) {
-      this(null, null, tabComponent, tabContentPane, toolTip, parent);
+    Tab(final Component tabComponent, final Component tabContentPane, final String toolTip) {
+      this(null, null, tabComponent, tabContentPane, toolTip);
     }
 
-    Tab(final Component tabContentPane, final Tab parent) {
-      this(null, null, null, tabContentPane, null, parent);
+    Tab(final Component tabContentPane) {
+      this(null, null, null, tabContentPane, null);
     }
 
-    Tab(final String tabTitle, final Component tabContentPane, final Tab parent) {
-      this(tabTitle, null, null, tabContentPane, null, parent);
+    Tab(final String tabTitle, final Component tabContentPane) {
+      this(tabTitle, null, null, tabContentPane, null);
     }
 
-    Tab(final String tabTitle, final Icon tabIcon, final Component tabContentPane, final Tab parent) {
-      this(tabTitle, tabIcon, null, tabContentPane, null, parent);
+    Tab(final String tabTitle, final Icon tabIcon, final Component tabContentPane) {
+      this(tabTitle, tabIcon, null, tabContentPane, null);
     }
 
-    Tab(final Component tabComponent, final Component tabContentPane, final Tab parent) {
-      this(null, null, tabComponent, tabContentPane, null, parent);
+    Tab(final Component tabComponent, final Component tabContentPane) {
+      this(null, null, tabComponent, tabContentPane, null);
     }
 
     public Tab getParent() {
-      return this.parent;
+      return tabTree.getParent(this);
     }
 
+    /**
+     * Moves this tab, along with its descendants and their pages, to the end of
+     * the children of the given parent, or of the root tabs for
+     * <code>null</code>. Since the tab tree model, this is a complete move: it
+     * used to only set the parent, leaving the lists of children, the levels
+     * and the pages to the caller, and the tree now rejects a move into the
+     * subtree of this tab.
+     */
     public void setParent(final Tab parent) {
-      this.parent = parent;
+      moveTab(this, parent, -1);
     }
 
+    /**
+     * Returns a copy of the children of this tab, which can be changed and kept
+     * while the tree changes. Use {@link TabTreeModel#getChildren(Object)} for a
+     * live view without the copy.
+     */
     public List<Tab> getChildren() {
-      return this.children;
+      return new ArrayList<>(tabTree.getChildren(this));
     }
 
     public Component getTabComponent() {
-      return this.tabComponent.getTabComponent();
+      return this.customTabComponent;
     }
 
+    /**
+     * Returns the container which wraps the tab component in the header. In
+     * virtualized mode this is <code>null</code> while the header is out of
+     * view.
+     */
     public Component getTabComponentWrapperContainer() {
       return this.tabComponent;
     }
 
     public void setTabComponent(final Component component) {
-      this.tabComponent.setTabComponent(component);
+      this.customTabComponent = component;
+      if (this.tabComponent != null) {
+        this.tabComponent.setTabComponent(component);
+      }
     }
 
     public Component getTabContentPane() {
@@ -643,7 +2736,58 @@ public class TabManager {
     }
 
     public void setTabContentPane(final Component tabContentPane) {
+      replaceTabContentPane(tabContentPane, null);
+    }
+
+    /**
+     * Replaces the content pane in the indexes. The content pane is considered
+     * realized only when there is no factory to create it.
+     */
+    private void replaceTabContentPane(final Component tabContentPane, final TabContentFactory contentFactory) {
+      final boolean registered = (this.tabContentPane != null) && (tabsByTabContentPane.get(this.tabContentPane) == this);
+      if (registered) {
+        tabsByTabContentPane.remove(this.tabContentPane);
+        forgetTabContent(this);
+      }
       this.tabContentPane = tabContentPane;
+      this.contentFactory = contentFactory;
+      if (registered && (tabContentPane != null)) {
+        tabsByTabContentPane.put(tabContentPane, this);
+        touchTabContent(this);
+      }
+    }
+
+    private void setTabContentFactory(final TabContentFactory contentFactory) {
+      replaceTabContentPane(this.tabContentPane, contentFactory);
+      if (tabbedPane.getSelectedComponent() == this.tabContentPane) {
+        realizeTabContentPane();
+      }
+    }
+
+    /**
+     * Returns <code>false</code> while the content pane of this tab is still a
+     * placeholder waiting for its {@link TabContentFactory}.
+     */
+    public boolean isTabContentPaneRealized() {
+      return this.contentFactory == null;
+    }
+
+    /**
+     * Creates the content pane with the factory of this tab, if it hasn't been
+     * created yet, and puts it in place of the placeholder.
+     */
+    public void realizeTabContentPane() {
+      if (this.contentFactory != null) {
+        final TabContentFactory factory = this.contentFactory;
+        this.contentFactory = null;
+        final Component placeholder = this.tabContentPane;
+        final Component content = factory.createTabContentPane(this);
+        final int index = tabbedPane.indexOfComponent(placeholder);
+        setTabContentPane(content);
+        if (index != -1) {
+          tabbedPane.setComponentAt(index, content);
+        }
+      }
     }
 
     public String getTabTitle() {
@@ -652,14 +2796,35 @@ public class TabManager {
 
     public void setTabTitle(final String tabTitle) {
       this.tabTitle = tabTitle;
+      updateTitleIndex(this);
     }
 
+    /**
+     * Returns the icon of the tab, as it was set.
+     */
     public Icon getTabIcon() {
       return this.tabIcon;
     }
 
+    /**
+     * Returns the icon to paint for the tab. Icons which aren't backed by an
+     * image are wrapped in a {@link CachedIcon}, which paints them from a
+     * cached raster.
+     */
+    Icon getPaintedIcon() {
+      return this.paintedIcon;
+    }
+
+    /**
+     * Sets the icon of the tab. Setting the same icon again renders it anew,
+     * for icons whose appearance has changed.
+     */
     public void setTabIcon(final Icon tabIcon) {
+      if (tabIcon != null) {
+        iconRasterCache.invalidate(tabIcon instanceof CachedIcon ? ((CachedIcon) tabIcon).getIcon() : tabIcon);
+      }
       this.tabIcon = tabIcon;
+      this.paintedIcon = CachedIcon.wrap(tabIcon, iconRasterCache);
     }
 
     public String getToolTip() {
@@ -668,50 +2833,79 @@ public class TabManager {
 
     public void setToolTip(final String toolTip) {
       this.toolTip = toolTip;
+      updateTitleIndex(this);
+    }
+
+    public Object getKey() {
+      return this.key;
+    }
+
+    /**
+     * Sets the key which identifies this tab in a {@link TreeSnapshot}, or
+     * <code>null</code> for none. Keys are compared with <code>equals()</code>
+     * and can only be used by one tab at a time. See
+     * {@link TabManager#reconcile(TreeSnapshot, TabReconcileHandler)}.
+     */
+    public void setKey(final Object key) {
+      final Tab other = key == null ? null : tabsByKey.get(key);
+      if ((other != null) && (other != this)) {
+        throw new IllegalArgumentException("Key is already used by another tab: " + key);
+      }
+      final boolean registered = tabTree.contains(this);
+      if (registered && (this.key != null)) {
+        tabsByKey.remove(this.key);
+      }
+      this.key = key;
+      if (registered && (key != null)) {
+        tabsByKey.put(key, this);
+      }
     }
 
     public boolean isCollapsed() {
-      return this.collapsed;
+      return tabTree.isCollapsed(this);
     }
 
+    /**
+     * Collapses or expands this tab alone; its descendants keep their own
+     * state. When the placement hides collapsed children, the pages of the
+     * descendants are removed or inserted, right away or when the current batch
+     * ends. Since the tab tree model, the pages follow the state: this used to
+     * only update the flag and the collapse button.
+     */
     public void setCollapsed(final boolean collapsed) {
-      this.tabComponent.setCollapsed(collapsed);
-      this.collapsed = collapsed;
+      tabTree.setCollapsed(this, collapsed);
     }
 
     public int getTabLevel() {
-      return this.tabLevel;
+      return tabTree.getLevel(this);
     }
 
     public void setTabLevel(final int tabLevel) {
-      this.tabLevel = tabLevel;
+      tabTree.setLevel(this, tabLevel);
     }
 
-    private int computeIndex() {
-      int res = 0;
-      if (!this.isCollapsed()) {
-        res += children.size();
-        for (final Tab t : children) {
-          if (t.children.size() > 0) {
-            res += t.computeIndex();
-          }
-        }
+    public Tab addChild(final String tabTitle, final Icon tabIcon, final Component tabComponent,
+        final Component tabContentPane, final String toolTip) {
+      final Tab childTab = new Tab(tabTitle, tabIcon, tabComponent, tabContentPane, toolTip);
+      final long start = beginOperation();
+      try {
+        registerTab(childTab);
+        this.expandTab();
+        tabTree.insert(this, -1, childTab);
+      } finally {
+        endOperation(start, TabOperationEvent.Type.ADD_CHILD, childTab, 1);
       }
-      return res;
+      return childTab;
     }
 
+    /**
+     * Adds a child whose content pane is created by the given factory when it
+     * is selected for the first time.
+     */
     public Tab addChild(final String tabTitle, final Icon tabIcon, final Component tabComponent,
-        final Component tabContentPane, final String toolTip) {
-      final Tab childTab = new Tab(tabTitle, tabIcon, tabComponent, tabContentPane, toolTip, this);
-      this.children.add(childTab);
-      this.expandTab();
-      final int curTabIndex = tabbedPane.indexOfTabComponent(this.tabComponent);
-      final int childIndex = curTabIndex + computeIndex();
-      tabbedPane.insertTab(tabTitle, tabIcon, tabContentPane, toolTip, childIndex);
-      tabbedPane.setTabComponentAt(childIndex, childTab.tabComponent);
-      if (this.children.size() > 0) {
-        this.tabComponent.showCollapseButton();
-      }
+        final TabContentFactory contentFactory, final String toolTip) {
+      final Tab childTab = addChild(tabTitle, tabIcon, tabComponent, new ContentPlaceholder(), toolTip);
+      childTab.setTabContentFactory(contentFactory);
       return childTab;
     }
 
@@ -733,58 +2927,66 @@ public class TabManager {
 
     public void addSibling(final String tabTitle, final Icon tabIcon, final Component tabComponent, final Component tabContentPane,
         final String toolTip) {
-      if (this.parent == null) {
+      final Tab parent = getParent();
+      if (parent == null) {
         addTab(tabTitle, tabIcon, tabComponent, tabContentPane, toolTip);
       } else {
-        this.parent.addChild(tabTitle, tabIcon, tabComponent, tabContentPane, toolTip);
+        parent.addChild(tabTitle, tabIcon, tabComponent, tabContentPane, toolTip);
       }
     }
 
+    /**
+     * Makes the levels of the descendants follow the level of this tab again,
+     * after it was set with {@link #setTabLevel(int)}. Moving tabs keeps the
+     * levels in line by itself.
+     */
     public void updateChildrenLevels() {
-      if (children != null) {
-        for (final Tab child : children) {
-          child.tabLevel = this.tabLevel + 1;
-          child.updateChildrenLevels();
-        }
-      }
+      tabTree.updateLevels(this);
     }
 
+    /**
+     * Moves the children of this tab, along with their descendants and their
+     * pages, to the end of the children of the given tab. Since the tab tree
+     * model, this is a complete move: it used to only set the parent of the
+     * children, which stayed in the list of children of this tab.
+     */
     public void updateParentOfChildren(final Tab newParent) {
-      if (children != null) {
-        for (final Tab child : children) {
-          child.parent = newParent;
-        }
+      for (final Tab child : getChildren()) {
+        tabTree.move(child, newParent, -1);
       }
     }
 
+    /**
+     * Removes this tab along with its page. The first child takes the place of
+     * this tab and adopts the other children.
+     */
     public void removeSelf() {
-      this.expandTab();
-      int childIndex = this.parent == null ? tabs.indexOf(this) : this.parent.children.indexOf(this);
-      final List<Tab> tabList = parent == null ? tabs : parent.children;
+      final long start = beginOperation();
+      try {
+        tabTree.remove(this);
+        unregisterTab(this);
+      } finally {
+        endOperation(start, TabOperationEvent.Type.REMOVE, this, 1);
+      }
+    }
 
-      if (this.children.size() > 0) {
-        final Tab newParent = this.children.get(0);
-        newParent.tabLevel = this.tabLevel;
-        newParent.parent = this.parent;
-        this.children.remove(0);
-        this.updateParentOfChildren(newParent);
-        newParent.children.addAll(this.children);
-        newParent.updateChildrenLevels();
-        tabList.add(childIndex++, newParent);
-        if (newParent.children.size() > 0) {
-          newParent.tabComponent.showCollapseButton();
-          newParent.expandTab();
-        }
+    private void showCollapseButton() {
+      if (this.tabComponent != null) {
+        this.tabComponent.showCollapseButton();
       }
+    }
 
-      tabList.remove(childIndex);
-      if ((this.parent != null) && (this.parent.children.size() <= 0)) {
-        this.parent.tabComponent.hideCollapseButton();
+    private void hideCollapseButton() {
+      if (this.tabComponent != null) {
+        this.tabComponent.hideCollapseButton();
       }
     }
 
+    /**
+     * Closes all the descendants of this tab.
+     */
     public void removeAllChildren() {
-
+      closeTabs(getChildren());
     }
 
     /**
@@ -792,81 +2994,37 @@ public class TabManager {
      * This expansion changes the state of the tab to expanded.
      */
     public void expandTab() {
-      if (this.isCollapsed()) {
-        if (this.children != null) {
-          int index = tabbedPane.indexOfTabComponent(this.tabComponent);
-          for (final Tab child : this.children) {
-            addTab(child, ++index);
-          }
-        }
-        this.setCollapsed(false);
-      }
-    }
-
-    /**
-     * Expands the tab hierarchy recursively. This does not change the state of
-     * tab to expanded. This behavior is useful when the tab placement is
-     * changed from vertical to horizontal. In that case we are saving the
-     * previous state of the tab, so that it can be restored when the tab
-     * placement is changed back to vertical.
-     */
-    protected void expandTabTree() {
-      if (this.children != null) {
-        final int index = tabbedPane.indexOfTabComponent(this.tabComponent);
-        expandTabTreeHelper(index);
+      final long start = beginOperation();
+      try {
+        tabTree.setCollapsed(this, false);
+      } finally {
+        endOperation(start, TabOperationEvent.Type.EXPAND, this);
       }
     }
 
     /**
-     * Expands the tab by adding the children from the specified index
-     * recursively.
-     *
-     * @param index
-     *          index from where the child tabs need to be added.
-     * @return index of the tab which was last added.
+     * Collapses this tab along with all its descendants. The pages of the
+     * descendants are removed as one block.
      */
-    private int expandTabTreeHelper(int index) {
-      for (final Tab child : this.children) {
-        if (this.isCollapsed()) {
-          addTab(child, ++index);
-        } else {
-          index++;
-        }
-        index = child.expandTabTree(index);
+    public void collapseTab() {
+      final long start = beginOperation();
+      try {
+        tabTree.setSubtreeCollapsed(this, true);
+      } finally {
+        endOperation(start, TabOperationEvent.Type.COLLAPSE, this);
       }
-      return index;
     }
 
     /**
-     * Expands the tab hierarchy recursively.
-     *
-     * @param index
-     *          index from where the child tabs need to be added.
-     * @return index of the tab which was last added.
+     * Expands this tab along with all its descendants. The pages of the
+     * descendants are inserted as one block.
      */
-    private int expandTabTree(int index) {
-      if (this.children != null) {
-        index = expandTabTreeHelper(index);
-      }
-      return index;
-    }
-
-    public void collapseTab() {
-      if (this.children != null) {
-        for (final Tab child : this.children) {
-          tabbedPane.remove(child.tabContentPane);
-          child.collapseTab();
-        }
-      }
-      this.setCollapsed(true);
-    }
-
-    protected void restoreTabHierarchy() {
-      if (this.isCollapsed()) {
-        collapseTab();
-      }
-      for (final Tab t : this.children) {
-        t.restoreTabHierarchy();
+    public void expandAll() {
+      final long start = beginOperation();
+      try {
+        tabTree.setSubtreeCollapsed(this, false);
+      } finally {
+        endOperation(start, TabOperationEvent.Type.EXPAND, this);
       }
     }
 
@@ -0,0 +1,230 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Operation counters of a TabManager,
+ * registered as an MBean when instrumentation is enabled
+ *
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
+
+import co.uproot.htabs.custom.tabbedpane.CustomTabbedPane;
+
+/**
+ * The counters are only updated on the event dispatch thread, and are read by
+ * the JMX clients from other threads. A reset requested by a JMX client is
+ * handed over to the event dispatch thread too.
+ */
+public class TabManagerStats implements TabManagerStatsMBean {
+
+  final Timer computeTabIndents = new Timer();
+  final Timer tabLookup = new Timer();
+  final Timer insertPage = new Timer();
+  final Timer removePage = new Timer();
+  final Timer expand = new Timer();
+  final Timer collapse = new Timer();
+
+  private final JTabbedPane tabbedPane;
+
+  private volatile int tabCount;
+  private volatile int visiblePageCount;
+  private volatile int maxDepth;
+  private volatile int realizedContentPaneCount;
+
+  TabManagerStats(final JTabbedPane tabbedPane) {
+    this.tabbedPane = tabbedPane;
+  }
+
+  void setSizes(final int tabCount, final int visiblePageCount, final int maxDepth, final int realizedContentPaneCount) {
+    this.tabCount = tabCount;
+    this.visiblePageCount = visiblePageCount;
+    this.maxDepth = maxDepth;
+    this.realizedContentPaneCount = realizedContentPaneCount;
+  }
+
+  @Override
+  public long getComputeTabIndentsCount() {
+    return computeTabIndents.count;
+  }
+
+  @Override
+  public long getComputeTabIndentsTotalNanos() {
+    return computeTabIndents.totalNanos;
+  }
+
+  @Override
+  public long getComputeTabIndentsMaxNanos() {
+    return computeTabIndents.maxNanos;
+  }
+
+  @Override
+  public long getTabLookupCount() {
+    return tabLookup.count;
+  }
+
+  @Override
+  public long getTabLookupTotalNanos() {
+    return tabLookup.totalNanos;
+  }
+
+  @Override
+  public long getTabLookupMaxNanos() {
+    return tabLookup.maxNanos;
+  }
+
+  @Override
+  public long getInsertPageCount() {
+    return insertPage.count;
+  }
+
+  @Override
+  public long getInsertPageTotalNanos() {
+    return insertPage.totalNanos;
+  }
+
+  @Override
+  public long getInsertPageMaxNanos() {
+    return insertPage.maxNanos;
+  }
+
+  @Override
+  public long getRemovePageCount() {
+    return removePage.count;
+  }
+
+  @Override
+  public long getRemovePageTotalNanos() {
+    return removePage.totalNanos;
+  }
+
+  @Override
+  public long getRemovePageMaxNanos() {
+    return removePage.maxNanos;
+  }
+
+  @Override
+  public long getExpandCount() {
+    return expand.count;
+  }
+
+  @Override
+  public long getExpandTotalNanos() {
+    return expand.totalNanos;
+  }
+
+  @Override
+  public long getExpandMaxNanos() {
+    return expand.maxNanos;
+  }
+
+  @Override
+  public long getCollapseCount() {
+    return collapse.count;
+  }
+
+  @Override
+  public long getCollapseTotalNanos() {
+    return collapse.totalNanos;
+  }
+
+  @Override
+  public long getCollapseMaxNanos() {
+    return collapse.maxNanos;
+  }
+
+  @Override
+  public long getLayoutCount() {
+    return tabbedPane instanceof CustomTabbedPane ? ((CustomTabbedPane) tabbedPane).getLayoutCount() : 0;
+  }
+
+  @Override
+  public long getLayoutTotalNanos() {
+    return tabbedPane instanceof CustomTabbedPane ? ((CustomTabbedPane) tabbedPane).getLayoutNanos() : 0;
+  }
+
+  @Override
+  public long getLayoutMaxNanos() {
+    return tabbedPane instanceof CustomTabbedPane ? ((CustomTabbedPane) tabbedPane).getMaxLayoutNanos() : 0;
+  }
+
+  @Override
+  public int getTabCount() {
+    return tabCount;
+  }
+
+  @Override
+  public int getVisiblePageCount() {
+    return visiblePageCount;
+  }
+
+  @Override
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  @Override
+  public int getRealizedContentPaneCount() {
+    return realizedContentPaneCount;
+  }
+
+  @Override
+  public void reset() {
+    if (!SwingUtilities.isEventDispatchThread()) {
+      SwingUtilities.invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          reset();
+        }
+      });
+      return;
+    }
+    computeTabIndents.reset();
+    tabLookup.reset();
+    insertPage.reset();
+    removePage.reset();
+    expand.reset();
+    collapse.reset();
+    if (tabbedPane instanceof CustomTabbedPane) {
+      ((CustomTabbedPane) tabbedPane).resetLayoutStats();
+    }
+  }
+
+  static final class Timer {
+    volatile long count;
+    volatile long totalNanos;
+    volatile long maxNanos;
+
+    /* Records an operation started at the given System.nanoTime() */
+    void record(final long startNanos) {
+      final long nanos = System.nanoTime() - startNanos;
+      count++;
+      totalNanos += nanos;
+      if (nanos > maxNanos) {
+        maxNanos = nanos;
+      }
+    }
+
+    void reset() {
+      count = 0;
+      totalNanos = 0;
+      maxNanos = 0;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package co.uproot.htabs.tabmanager;
+
+/**
+ * Management interface of the operation counters of a {@link TabManager}. See
+ * {@link TabManager#setInstrumented(boolean)}. The times are in nanoseconds,
+ * and are counted since the instrumentation was enabled or last reset. The
+ * sizes are sampled on the event dispatch thread after the tabs change.
+ */
+public interface TabManagerStatsMBean {
+
+  public long getComputeTabIndentsCount();
+
+  public long getComputeTabIndentsTotalNanos();
+
+  public long getComputeTabIndentsMaxNanos();
+
+  public long getTabLookupCount();
+
+  public long getTabLookupTotalNanos();
+
+  public long getTabLookupMaxNanos();
+
+  public long getInsertPageCount();
+
+  public long getInsertPageTotalNanos();
+
+  public long getInsertPageMaxNanos();
+
+  public long getRemovePageCount();
+
+  public long getRemovePageTotalNanos();
+
+  public long getRemovePageMaxNanos();
+
+  public long getExpandCount();
+
+  public long getExpandTotalNanos();
+
+  public long getExpandMaxNanos();
+
+  public long getCollapseCount();
+
+  public long getCollapseTotalNanos();
+
+  public long getCollapseMaxNanos();
+
+  /**
+   * The layout counters are only available when the tabbed pane is a
+   * <code>CustomTabbedPane</code>.
+   */
+  public long getLayoutCount();
+
+  public long getLayoutTotalNanos();
+
+  public long getLayoutMaxNanos();
+
+  public int getTabCount();
+
+  public int getVisiblePageCount();
+
+  public int getMaxDepth();
+
+  public int getRealizedContentPaneCount();
+
+  /**
+   * Resets the counters and the times. When called from another thread, the
+   * reset happens shortly after, on the event dispatch thread.
+   */
+  public void reset();
+}
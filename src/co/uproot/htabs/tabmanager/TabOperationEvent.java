@@ -0,0 +1,106 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Event describing an operation of a TabManager,
+ * for tracing
+ *
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.util.EventObject;
+
+import co.uproot.htabs.tabmanager.TabManager.Tab;
+
+/**
+ * Describes an operation performed by a {@link TabManager}: its type, the tab
+ * it was performed on, the sizes involved and how long it took. When the
+ * operation ran on the event dispatch thread for longer than the stall
+ * threshold, the event also carries a sample of the stack of that thread,
+ * taken while the operation was running.
+ */
+public class TabOperationEvent extends EventObject {
+
+  private static final long serialVersionUID = 1L;
+
+  public enum Type {
+    ADD, ADD_CHILD, REMOVE, MOVE, EXPAND, COLLAPSE, PLACEMENT, LAYOUT, RECONCILE
+  }
+
+  private final Type type;
+  private final transient Tab tab;
+  private final int tabCount;
+  private final int subtreeSize;
+  private final long durationNanos;
+  private final StackTraceElement[] stallStackTrace;
+
+  public TabOperationEvent(final TabManager source, final Type type, final Tab tab, final int tabCount,
+      final int subtreeSize, final long durationNanos, final StackTraceElement[] stallStackTrace) {
+    super(source);
+    this.type = type;
+    this.tab = tab;
+    this.tabCount = tabCount;
+    this.subtreeSize = subtreeSize;
+    this.durationNanos = durationNanos;
+    this.stallStackTrace = stallStackTrace;
+  }
+
+  public TabManager getTabManager() {
+    return (TabManager) getSource();
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Returns the tab the operation was performed on, or <code>null</code> for
+   * the operations on the whole tree and for the operations on several tabs.
+   */
+  public Tab getTab() {
+    return tab;
+  }
+
+  /**
+   * Returns the number of tabs in the tree after the operation.
+   */
+  public int getTabCount() {
+    return tabCount;
+  }
+
+  /**
+   * Returns the number of tabs the operation was applied to: the tab along with
+   * its descendants, all the tabs of the tree for the operations on the whole
+   * tree, the number of pages for a layout, or the number of tabs added,
+   * moved, updated or closed by a reconciliation.
+   */
+  public int getSubtreeSize() {
+    return subtreeSize;
+  }
+
+  public long getDurationNanos() {
+    return durationNanos;
+  }
+
+  /**
+   * Returns the stack of the event dispatch thread sampled once the operation
+   * exceeded the stall threshold, or <code>null</code> if it didn't.
+   */
+  public StackTraceElement[] getStallStackTrace() {
+    return stallStackTrace;
+  }
+}
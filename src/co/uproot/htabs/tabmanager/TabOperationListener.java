@@ -0,0 +1,36 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Listener for tracing the operations
+ * of a TabManager
+ *
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.util.EventListener;
+
+/**
+ * Listens to the operations performed by a {@link TabManager}, for tracing.
+ * Only the outermost operation is reported when operations are nested, such as
+ * the expansion of the parent when a child is added. The events are fired on
+ * the thread which performed the operation, once it is done.
+ */
+public interface TabOperationListener extends EventListener {
+
+  public void operationPerformed(TabOperationEvent e);
+}
@@ -0,0 +1,41 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.awt.Component;
+
+import co.uproot.htabs.tabmanager.TabManager.Tab;
+
+/**
+ * Creates the components of the tabs added by
+ * {@link TabManager#reconcile(TreeSnapshot, TabReconcileHandler)}.
+ */
+public interface TabReconcileHandler {
+
+  /**
+   * Returns the tab component of a new tab, or <code>null</code> when the
+   * headers are painted by a {@link TabHeaderRenderer}.
+   */
+  public Component createTabComponent(TreeSnapshot.Node node);
+
+  /**
+   * Creates the content pane of a new tab, on the event dispatch thread, when
+   * the tab is selected for the first time.
+   */
+  public Component createTabContentPane(Tab tab, TreeSnapshot.Node node);
+
+}
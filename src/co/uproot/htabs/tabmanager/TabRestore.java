@@ -0,0 +1,315 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Restore of a tab snapshot spread over
+ * several turns of the event dispatch thread
+ *
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+
+import co.uproot.htabs.tabmanager.TabManager.Tab;
+
+/**
+ * A restore started by
+ * {@link TabManager#restoreSnapshotInChunks(InputStream, TabSnapshotHandler, TabRestoreListener, long)}.
+ * <p>
+ * The restored tabs always form a contiguous range of the depth first order
+ * of the snapshot, along with the ancestors of that range. The range starts at
+ * the selected tab and grows by one tab on each side in turn. A tab added on
+ * the right always becomes the last child of its parent, and a tab added on
+ * the left, along with its missing ancestors, the first child of its parent,
+ * so the tabs end up in the order of the snapshot without any search.
+ * <p>
+ * The page of every restored tab is inserted along with the tab, and the
+ * layout of the tabbed pane is deferred to the end of the chunk. That layout
+ * costs about the same whatever the size of the chunk, so it is estimated on
+ * its own, from the time taken by the previous one. A chunk stops once the
+ * time spent, plus the estimated layout, reaches the frame budget, but it
+ * always gets at least half the budget to restore tabs.
+ */
+public class TabRestore {
+
+  private final TabManager tabManager;
+  private final TabSnapshotHandler handler;
+  private final TabRestoreListener listener;
+  private final long frameBudgetNanos;
+
+  /* The records of the snapshot, indexed in depth first order */
+  private int tabCount = 0;
+  private String[] titles;
+  private String[] toolTips;
+  private byte[][] payloads;
+  private int[] parents;
+  private boolean[] collapsed;
+  private int selectedIndex = -1;
+
+  /* The restored tabs */
+  private Tab[] tabs;
+  /* The tabs not restored because their parent was closed meanwhile */
+  private boolean[] skipped;
+  private int first;
+  private int last;
+  private boolean growLeft = false;
+  private Tab firstRestoredRoot = null;
+  private int restoredCount = 0;
+  /* Estimated time to end a chunk and lay out its pages, -1 until measured */
+  private long chunkEndNanos = -1;
+  private long endUpdateNanos = 0;
+  private long layoutNanosMark = -1;
+  private boolean cancelled = false;
+  private boolean done = false;
+
+  TabRestore(final TabManager tabManager, final TabSnapshotHandler handler, final TabRestoreListener listener,
+      final long frameBudgetNanos) {
+    this.tabManager = tabManager;
+    this.handler = handler;
+    this.listener = listener;
+    this.frameBudgetNanos = frameBudgetNanos;
+  }
+
+  /**
+   * Returns the number of tabs in the snapshot, or 0 until it has been read.
+   */
+  public int getTabCount() {
+    return tabCount;
+  }
+
+  public int getRestoredCount() {
+    return restoredCount;
+  }
+
+  /**
+   * Returns <code>true</code> once the restore has finished, failed or been
+   * cancelled.
+   */
+  public boolean isDone() {
+    return done;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Stops the restore before the next chunk. The tabs restored so far are
+   * kept. Has to be called on the event dispatch thread.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  void start(final InputStream in) {
+    new SwingWorker<Void, Void>() {
+      @Override
+      protected Void doInBackground() throws IOException {
+        read(in);
+        return null;
+      }
+
+      @Override
+      protected void done() {
+        try {
+          get();
+        } catch (final ExecutionException e) {
+          final Throwable cause = e.getCause();
+          fail(cause instanceof IOException ? (IOException) cause : new IOException(
+              "Couldn't read the tab snapshot", cause));
+          return;
+        } catch (final InterruptedException | CancellationException e) {
+          fail(new InterruptedIOException("Reading the tab snapshot was interrupted"));
+          return;
+        }
+        runChunk();
+      }
+    }.execute();
+  }
+
+  /* Called on a background thread, before any chunk runs */
+  private void read(final InputStream in) throws IOException {
+    final TabSnapshotReader reader = new TabSnapshotReader(in);
+    final int count = reader.readHeader();
+    resize(Math.min(count, TabSnapshotReader.MAX_INITIAL_CAPACITY));
+    int[] path = new int[16];
+    int i = 0;
+    while (reader.next()) {
+      if (i == titles.length) {
+        resize(Math.max(16, i * 2));
+      }
+      final int level = reader.getLevel();
+      if (level == path.length) {
+        path = Arrays.copyOf(path, level * 2);
+      }
+      path[level] = i;
+      parents[i] = level == 0 ? -1 : path[level - 1];
+      titles[i] = reader.getTitle();
+      toolTips[i] = reader.getToolTip();
+      payloads[i] = reader.getPayload();
+      collapsed[i] = reader.isCollapsed();
+      if (reader.isSelected()) {
+        selectedIndex = i;
+      }
+      i++;
+    }
+    tabs = new Tab[count];
+    skipped = new boolean[count];
+    tabCount = count;
+  }
+
+  private void resize(final int capacity) {
+    titles = titles == null ? new String[capacity] : Arrays.copyOf(titles, capacity);
+    toolTips = toolTips == null ? new String[capacity] : Arrays.copyOf(toolTips, capacity);
+    payloads = payloads == null ? new byte[capacity][] : Arrays.copyOf(payloads, capacity);
+    parents = parents == null ? new int[capacity] : Arrays.copyOf(parents, capacity);
+    collapsed = collapsed == null ? new boolean[capacity] : Arrays.copyOf(collapsed, capacity);
+  }
+
+  private void runChunk() {
+    if (cancelled || (tabCount == 0)) {
+      finish();
+      return;
+    }
+    final long start = System.nanoTime();
+    measureChunkEnd();
+    final long estimate = chunkEndNanos < 0 ? frameBudgetNanos / 2 : chunkEndNanos;
+    final long restoreNanos = Math.max(frameBudgetNanos - estimate, frameBudgetNanos / 2);
+    final boolean firstChunk = restoredCount == 0;
+    long endStart = 0;
+    tabManager.beginPageUpdate();
+    try {
+      if (firstChunk) {
+        first = last = selectedIndex < 0 ? 0 : selectedIndex;
+        restoreWithAncestors(first);
+      }
+      while (((first > 0) || (last < tabCount - 1)) && ((System.nanoTime() - start) < restoreNanos)) {
+        if ((first > 0) && (growLeft || (last == tabCount - 1))) {
+          first--;
+          if (isPending(first)) {
+            restoreWithAncestors(first);
+          }
+        } else {
+          last++;
+          restore(last, -1);
+        }
+        growLeft = !growLeft;
+      }
+      endStart = System.nanoTime();
+    } finally {
+      tabManager.endPageUpdate();
+    }
+    endUpdateNanos = System.nanoTime() - endStart;
+    layoutNanosMark = tabManager.getPageLayoutNanos();
+    if (firstChunk && (selectedIndex >= 0) && tabManager.getTabTreeModel().contains(tabs[selectedIndex])) {
+      tabManager.selectTab(tabs[selectedIndex]);
+    }
+
+    if (listener != null) {
+      listener.restoreProgressed(this);
+    }
+    if ((first == 0) && (last == tabCount - 1)) {
+      finish();
+    } else {
+      SwingUtilities.invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          runChunk();
+        }
+      });
+    }
+  }
+
+  /*
+   * Adds the time taken by the end of the previous chunk to the layout which
+   * followed it, queued before this chunk, and refines the estimate with it.
+   */
+  private void measureChunkEnd() {
+    if (layoutNanosMark < 0) {
+      if (restoredCount > 0) {
+        chunkEndNanos = endUpdateNanos;
+      }
+      return;
+    }
+    final long nanos = endUpdateNanos + Math.max(0, tabManager.getPageLayoutNanos() - layoutNanosMark);
+    chunkEndNanos = chunkEndNanos < 0 ? nanos : (chunkEndNanos + nanos) / 2;
+  }
+
+  private boolean isPending(final int index) {
+    return (tabs[index] == null) && !skipped[index];
+  }
+
+  /* Restores the tab after its missing ancestors, each as the first child of its parent */
+  private void restoreWithAncestors(final int index) {
+    int[] chain = new int[16];
+    int length = 0;
+    for (int i = index; (i >= 0) && isPending(i); i = parents[i]) {
+      if (length == chain.length) {
+        chain = Arrays.copyOf(chain, length * 2);
+      }
+      chain[length++] = i;
+    }
+    for (int i = length - 1; i >= 0; i--) {
+      restore(chain[i], 0);
+    }
+  }
+
+  private void restore(final int index, final int childIndex) {
+    final int parentIndex = parents[index];
+    final Tab parent = parentIndex < 0 ? null : tabs[parentIndex];
+    final TabTreeModel<Tab> tabTree = tabManager.getTabTreeModel();
+    if ((parentIndex >= 0) && (skipped[parentIndex] || !tabTree.contains(parent))) {
+      skipped[index] = true;
+      return;
+    }
+    int insertIndex = childIndex;
+    if ((parent == null) && (childIndex == 0)) {
+      /* The restored roots follow the tabs which were already there */
+      insertIndex = firstRestoredRoot == null ? -1 : Math.max(0, tabTree.getIndexInParent(firstRestoredRoot));
+    }
+    final Tab tab = tabManager.restoreTab(parent, insertIndex, titles[index], toolTips[index], payloads[index],
+        collapsed[index], handler);
+    if ((parent == null) && ((firstRestoredRoot == null) || (childIndex == 0))) {
+      firstRestoredRoot = tab;
+    }
+    tabs[index] = tab;
+    payloads[index] = null;
+    restoredCount++;
+  }
+
+  private void fail(final IOException e) {
+    done = true;
+    if (listener != null) {
+      listener.restoreFailed(this, e);
+    }
+  }
+
+  private void finish() {
+    done = true;
+    if (listener != null) {
+      listener.restoreFinished(this);
+    }
+  }
+}
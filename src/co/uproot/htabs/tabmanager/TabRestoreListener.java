@@ -0,0 +1,45 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.io.IOException;
+
+/**
+ * Follows the progress of a {@link TabRestore}. All the methods are called on
+ * the event dispatch thread.
+ */
+public interface TabRestoreListener {
+
+  /**
+   * Called after each chunk of tabs has been restored.
+   */
+  public void restoreProgressed(TabRestore restore);
+
+  /**
+   * Called once all the tabs have been restored, or after the restore has been
+   * cancelled.
+   */
+  public void restoreFinished(TabRestore restore);
+
+  /**
+   * Called when the snapshot couldn't be read. No tab has been restored then.
+   * Failures other than I/O errors, such as a runtime exception thrown while
+   * reading, are reported wrapped in an <code>IOException</code>.
+   */
+  public void restoreFailed(TabRestore restore, IOException e);
+
+}
@@ -0,0 +1,35 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.util.List;
+
+import co.uproot.htabs.tabmanager.TabManager.Tab;
+
+/**
+ * Receives the results of a search run off the event dispatch thread. See
+ * {@link TabManager#findTabsFuzzy(String, int, TabSearchHandler)}.
+ */
+public interface TabSearchHandler {
+
+  /**
+   * Called on the event dispatch thread with the tabs matching the query, best
+   * matches first. The tabs closed while the search was running are left out.
+   */
+  public void tabsFound(String query, List<Tab> tabs);
+
+}
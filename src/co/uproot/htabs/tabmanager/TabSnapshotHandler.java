@@ -0,0 +1,48 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.awt.Component;
+
+import co.uproot.htabs.tabmanager.TabManager.Tab;
+
+/**
+ * Hooks used by {@link TabManager} to save the application state of the tabs
+ * in a snapshot, and to rebuild their components when the snapshot is
+ * restored. See
+ * {@link TabManager#saveSnapshot(java.io.OutputStream, TabSnapshotHandler)}.
+ */
+public interface TabSnapshotHandler {
+
+  /**
+   * Returns the data saved along with the tab, or <code>null</code>.
+   */
+  public byte[] savePayload(Tab tab);
+
+  /**
+   * Returns the tab component of a restored tab, or <code>null</code> when the
+   * headers are painted by a {@link TabHeaderRenderer}.
+   */
+  public Component createTabComponent(String title, String toolTip, byte[] payload);
+
+  /**
+   * Creates the content pane of a restored tab, on the event dispatch thread,
+   * when the tab is selected for the first time.
+   */
+  public Component createTabContentPane(Tab tab, byte[] payload);
+
+}
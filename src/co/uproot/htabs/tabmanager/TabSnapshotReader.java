@@ -0,0 +1,202 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Streaming reader of the binary snapshots
+ * of tab hierarchies
+ *
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads a snapshot written by {@link TabSnapshotWriter}, one tab at a time.
+ * After {@link #readHeader()}, each call to {@link #next()} reads the record of
+ * the next tab in depth first order, whose fields are then available through
+ * the getters until the following call. The level of the tab, 0 for the root
+ * tabs of the snapshot, is derived from the child counts of the records.
+ * <p>
+ * The counts and lengths read from the stream aren't trusted: buffers grow as
+ * the bytes actually arrive, and a snapshot holding fewer records than its
+ * header announces fails with an <code>EOFException</code>.
+ */
+public class TabSnapshotReader {
+
+  /* Callers shouldn't presize their buffers past this many tabs from the header alone */
+  static final int MAX_INITIAL_CAPACITY = 1024;
+  private static final int MAX_INITIAL_READ = 8192;
+
+  private final DataInputStream in;
+  private int remainingTabs = -1;
+  private int[] remainingChildren = new int[16];
+  private int depth = 0;
+  private byte[] buffer = new byte[256];
+
+  private int level;
+  private int flags;
+  private int childCount;
+  private String title;
+  private String toolTip;
+  private byte[] payload;
+
+  public TabSnapshotReader(final InputStream in) {
+    this.in = new DataInputStream(new BufferedInputStream(in));
+  }
+
+  /**
+   * Reads the header of the snapshot, and returns the number of tabs it
+   * announces. The count is only checked as the records are read.
+   */
+  public int readHeader() throws IOException {
+    if (remainingTabs >= 0) {
+      throw new IllegalStateException("The header has already been read");
+    }
+    if (in.readInt() != TabSnapshotWriter.MAGIC) {
+      throw new IOException("Not a tab snapshot");
+    }
+    final int version = in.readUnsignedShort();
+    if (version > TabSnapshotWriter.VERSION) {
+      throw new IOException("Unsupported tab snapshot version: " + version);
+    }
+    remainingTabs = readVarInt();
+    return remainingTabs;
+  }
+
+  /**
+   * Reads the record of the next tab. Returns <code>false</code> once all the
+   * tabs have been read.
+   */
+  public boolean next() throws IOException {
+    if (remainingTabs < 0) {
+      throw new IllegalStateException("The header hasn't been read");
+    }
+    while ((depth > 0) && (remainingChildren[depth - 1] == 0)) {
+      depth--;
+    }
+    if (remainingTabs == 0) {
+      if (depth > 0) {
+        throw new IOException("Truncated tab snapshot");
+      }
+      return false;
+    }
+    level = depth;
+    if (depth > 0) {
+      remainingChildren[depth - 1]--;
+    }
+    flags = in.readUnsignedByte();
+    childCount = readVarInt();
+    title = readString();
+    toolTip = readString();
+    payload = readBytes();
+    if (childCount > 0) {
+      if (depth == remainingChildren.length) {
+        remainingChildren = Arrays.copyOf(remainingChildren, depth * 2);
+      }
+      remainingChildren[depth++] = childCount;
+    }
+    remainingTabs--;
+    return true;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  public int getChildCount() {
+    return childCount;
+  }
+
+  public boolean isCollapsed() {
+    return (flags & TabSnapshotWriter.FLAG_COLLAPSED) != 0;
+  }
+
+  public boolean isSelected() {
+    return (flags & TabSnapshotWriter.FLAG_SELECTED) != 0;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public String getToolTip() {
+    return toolTip;
+  }
+
+  /**
+   * Returns the payload of the tab, or <code>null</code> if it has none. The
+   * array isn't reused by the reader.
+   */
+  public byte[] getPayload() {
+    return payload;
+  }
+
+  private String readString() throws IOException {
+    final int length = readVarInt() - 1;
+    if (length < 0) {
+      return null;
+    }
+    buffer = readFully(buffer, length);
+    return new String(buffer, 0, length, StandardCharsets.UTF_8);
+  }
+
+  private byte[] readBytes() throws IOException {
+    final int length = readVarInt() - 1;
+    if (length < 0) {
+      return null;
+    }
+    return readFully(new byte[Math.min(length, MAX_INITIAL_READ)], length);
+  }
+
+  /*
+   * Reads length bytes at the start of the array, which is grown as the bytes
+   * arrive, up to exactly length, rather than allocated from the length up
+   * front. Returns the array holding the bytes.
+   */
+  private byte[] readFully(byte[] bytes, final int length) throws IOException {
+    int read = 0;
+    while (read < length) {
+      if (read == bytes.length) {
+        bytes = Arrays.copyOf(bytes, (int) Math.min(length, bytes.length * 2L));
+      }
+      final int end = Math.min(length, bytes.length);
+      in.readFully(bytes, read, end - read);
+      read = end;
+    }
+    return bytes;
+  }
+
+  private int readVarInt() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      final int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        if (value < 0) {
+          throw new IOException("Malformed tab snapshot");
+        }
+        return value;
+      }
+    }
+    throw new IOException("Malformed tab snapshot");
+  }
+}
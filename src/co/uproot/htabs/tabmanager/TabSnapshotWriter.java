@@ -0,0 +1,124 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Streaming writer of the binary snapshots
+ * of tab hierarchies
+ *
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a snapshot of a tab hierarchy, one tab at a time. A snapshot is made
+ * of a header, holding a magic number, the format version and the number of
+ * tabs, followed by a record per tab in depth first order. Each record holds
+ * the flags of the tab, its number of children, its title, its tool tip and
+ * the payload of the application. Counts and lengths are written as unsigned
+ * variable length integers, and strings as UTF-8. See
+ * {@link TabSnapshotReader}.
+ */
+public class TabSnapshotWriter {
+
+  static final int MAGIC = 0x48546162;
+  static final int VERSION = 1;
+
+  static final int FLAG_COLLAPSED = 1;
+  static final int FLAG_SELECTED = 2;
+
+  private final DataOutputStream out;
+  private int remainingTabs = -1;
+
+  public TabSnapshotWriter(final OutputStream out) {
+    this.out = new DataOutputStream(new BufferedOutputStream(out));
+  }
+
+  /**
+   * Writes the header of the snapshot. Exactly <code>tabCount</code> tabs have
+   * to be written after it.
+   */
+  public void writeHeader(final int tabCount) throws IOException {
+    if (remainingTabs >= 0) {
+      throw new IllegalStateException("The header has already been written");
+    }
+    if (tabCount < 0) {
+      throw new IllegalArgumentException("Negative tab count: " + tabCount);
+    }
+    out.writeInt(MAGIC);
+    out.writeShort(VERSION);
+    writeVarInt(tabCount);
+    remainingTabs = tabCount;
+  }
+
+  /**
+   * Writes the record of a tab. The records of its children, and of their
+   * descendants, have to follow it.
+   */
+  public void writeTab(final String title, final String toolTip, final boolean collapsed, final boolean selected,
+      final int childCount, final byte[] payload) throws IOException {
+    if (remainingTabs <= 0) {
+      throw new IllegalStateException(remainingTabs < 0 ? "The header hasn't been written" : "Too many tabs");
+    }
+    if (childCount < 0) {
+      throw new IllegalArgumentException("Negative child count: " + childCount);
+    }
+    out.writeByte((collapsed ? FLAG_COLLAPSED : 0) | (selected ? FLAG_SELECTED : 0));
+    writeVarInt(childCount);
+    writeString(title);
+    writeString(toolTip);
+    writeBytes(payload);
+    remainingTabs--;
+  }
+
+  /**
+   * Flushes the snapshot to the underlying stream, which is left open.
+   */
+  public void finish() throws IOException {
+    if (remainingTabs != 0) {
+      throw new IllegalStateException(remainingTabs < 0 ? "The header hasn't been written" : remainingTabs
+          + " tabs are missing");
+    }
+    out.flush();
+  }
+
+  /* A null string or payload is written as the length 0, others as length + 1 */
+  private void writeString(final String s) throws IOException {
+    writeBytes(s == null ? null : s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void writeBytes(final byte[] bytes) throws IOException {
+    if (bytes == null) {
+      writeVarInt(0);
+    } else {
+      writeVarInt(bytes.length + 1);
+      out.write(bytes);
+    }
+  }
+
+  private void writeVarInt(int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+}
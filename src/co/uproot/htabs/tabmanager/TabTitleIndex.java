@@ -0,0 +1,386 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * N-gram index over the titles and tool tips
+ * of the tabs, for finding tabs by name
+ *
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Finds tabs whose title or tool tip contains a query, ignoring case. Each tab
+ * gets a new id whenever its text changes, and the posting list of every
+ * n-gram of the text, from single characters up to trigrams, gets that id
+ * appended, so the posting lists stay sorted and are never edited in place.
+ * The ids of removed tabs are dropped lazily: the candidates are checked
+ * against the current text, and the index is compacted once most of the ids
+ * are stale.
+ * <p>
+ * Matches are ranked by where the query occurs: at the start of the title, at
+ * the start of a word of the title, elsewhere in the title, and in the tool
+ * tip; then shorter titles and older tabs first. The n-grams found at the start
+ * of the words of the titles have posting lists of their own, so the best
+ * ranked matches are found first from a short list. Only when they don't fill
+ * the results is the query answered from the shortest posting list among its
+ * n-grams. The index is not thread safe; {@link #snapshot()} gives a
+ * copy which can be searched by fuzzy matching on another thread.
+ */
+class TabTitleIndex<T> {
+
+  private static final int MAX_GRAM_LENGTH = 3;
+  private static final long WORD_START = 1L << 60;
+  private static final int TITLE_PREFIX_RANK = 4;
+  private static final int WORD_START_RANK = 3;
+  private static final int TITLE_RANK = 2;
+  private static final int TOOL_TIP_RANK = 1;
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final Map<T, Integer> ids = new IdentityHashMap<>();
+  private final Map<Long, Postings> postings = new HashMap<>();
+  private Object[] tabs = new Object[INITIAL_CAPACITY];
+  private String[] titles = new String[INITIAL_CAPACITY];
+  private String[] toolTips = new String[INITIAL_CAPACITY];
+  private int nextId = 0;
+
+  public int size() {
+    return ids.size();
+  }
+
+  /**
+   * Indexes the tab with the given texts, replacing its previous texts.
+   */
+  public void put(final T tab, final String title, final String toolTip) {
+    remove(tab);
+    if (nextId == tabs.length) {
+      if (ids.size() < (tabs.length / 2)) {
+        compact();
+      } else {
+        final int capacity = tabs.length * 2;
+        tabs = Arrays.copyOf(tabs, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        toolTips = Arrays.copyOf(toolTips, capacity);
+      }
+    }
+    add(nextId++, tab, normalize(title), normalize(toolTip));
+  }
+
+  public void remove(final T tab) {
+    final Integer id = ids.remove(tab);
+    if (id != null) {
+      tabs[id] = null;
+      titles[id] = null;
+      toolTips[id] = null;
+    }
+  }
+
+  public void clear() {
+    ids.clear();
+    postings.clear();
+    Arrays.fill(tabs, 0, nextId, null);
+    Arrays.fill(titles, 0, nextId, null);
+    Arrays.fill(toolTips, 0, nextId, null);
+    nextId = 0;
+  }
+
+  /**
+   * Returns at most <code>maxResults</code> tabs containing the query, best
+   * matches first.
+   */
+  public List<T> search(final String query, final int maxResults) {
+    final String q = normalize(query);
+    if (q.isEmpty() || (maxResults <= 0)) {
+      return Collections.emptyList();
+    }
+    final PriorityQueue<Match> best = new PriorityQueue<>(Math.min(maxResults, 64) + 1,
+        Collections.reverseOrder());
+    final int gramLength = Math.min(q.length(), MAX_GRAM_LENGTH);
+    final Postings wordStarts = postings.get(gramAt(q, 0, gramLength) | WORD_START);
+    if (wordStarts != null) {
+      for (int i = 0; i < wordStarts.size; i++) {
+        offer(best, maxResults, wordStarts.ids[i], q, WORD_START_RANK, TITLE_PREFIX_RANK);
+      }
+      if ((best.size() == maxResults) && (best.peek().score >= WORD_START_RANK)) {
+        return TabTitleIndex.<T> toTabs(tabs, best);
+      }
+    }
+    Postings shortest = null;
+    for (int i = 0; i + gramLength <= q.length(); i++) {
+      final Postings p = postings.get(gramAt(q, i, gramLength));
+      if (p == null) {
+        return Collections.emptyList();
+      }
+      if ((shortest == null) || (p.size < shortest.size)) {
+        shortest = p;
+      }
+    }
+    for (int i = 0; i < shortest.size; i++) {
+      offer(best, maxResults, shortest.ids[i], q, TOOL_TIP_RANK, WORD_START_RANK - 1);
+    }
+    return TabTitleIndex.<T> toTabs(tabs, best);
+  }
+
+  /**
+   * Returns a copy of the texts which can be searched on any thread.
+   */
+  public Snapshot<T> snapshot() {
+    return new Snapshot<>(Arrays.copyOf(tabs, nextId), Arrays.copyOf(titles, nextId),
+        Arrays.copyOf(toolTips, nextId));
+  }
+
+  /* Adds the match of the tab if its rank is in the given range */
+  private void offer(final PriorityQueue<Match> best, final int maxResults, final int id, final String q,
+      final int minRank, final int maxRank) {
+    final String title = titles[id];
+    if (title == null) {
+      return;
+    }
+    final int rank = rank(title, toolTips[id], q);
+    if ((rank >= minRank) && (rank <= maxRank)) {
+      addMatch(best, maxResults, id, rank, title.length());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> List<T> toTabs(final Object[] tabs, final PriorityQueue<Match> best) {
+    final Match[] matches = best.toArray(new Match[best.size()]);
+    Arrays.sort(matches);
+    final List<T> result = new ArrayList<>(matches.length);
+    for (final Match match : matches) {
+      result.add((T) tabs[match.id]);
+    }
+    return result;
+  }
+
+  private void add(final int id, final T tab, final String title, final String toolTip) {
+    ids.put(tab, id);
+    tabs[id] = tab;
+    titles[id] = title;
+    toolTips[id] = toolTip;
+    addGrams(id, title);
+    addGrams(id, toolTip);
+    addWordStartGrams(id, title);
+  }
+
+  private void addGrams(final int id, final String text) {
+    for (int length = 1; length <= MAX_GRAM_LENGTH; length++) {
+      for (int i = 0; i + length <= text.length(); i++) {
+        addPosting(gramAt(text, i, length), id);
+      }
+    }
+  }
+
+  private void addWordStartGrams(final int id, final String title) {
+    for (int i = 0; i < title.length(); i++) {
+      if ((i == 0) || !Character.isLetterOrDigit(title.charAt(i - 1))) {
+        for (int length = 1; (length <= MAX_GRAM_LENGTH) && (i + length <= title.length()); length++) {
+          addPosting(gramAt(title, i, length) | WORD_START, id);
+        }
+      }
+    }
+  }
+
+  private void addPosting(final long gram, final int id) {
+    Postings p = postings.get(gram);
+    if (p == null) {
+      p = new Postings();
+      postings.put(gram, p);
+    }
+    p.add(id);
+  }
+
+  /* Gives the live tabs consecutive ids and rebuilds the posting lists */
+  @SuppressWarnings("unchecked")
+  private void compact() {
+    final Object[] oldTabs = tabs;
+    final String[] oldTitles = titles;
+    final String[] oldToolTips = toolTips;
+    final int oldNextId = nextId;
+    tabs = new Object[oldTabs.length];
+    titles = new String[oldTabs.length];
+    toolTips = new String[oldTabs.length];
+    ids.clear();
+    postings.clear();
+    nextId = 0;
+    for (int id = 0; id < oldNextId; id++) {
+      if (oldTabs[id] != null) {
+        add(nextId++, (T) oldTabs[id], oldTitles[id], oldToolTips[id]);
+      }
+    }
+  }
+
+  private static String normalize(final String text) {
+    return text == null ? "" : text.toLowerCase(Locale.ROOT);
+  }
+
+  /* Packs the characters of the n-gram, and its length, in a long */
+  private static long gramAt(final String text, final int index, final int length) {
+    long gram = length;
+    for (int i = 0; i < length; i++) {
+      gram = (gram << 16) | text.charAt(index + i);
+    }
+    return gram;
+  }
+
+  /* Returns the rank of a substring match, higher is better, 0 for no match */
+  private static int rank(final String title, final String toolTip, final String q) {
+    final int index = title.indexOf(q);
+    if (index == 0) {
+      return TITLE_PREFIX_RANK;
+    } else if (index > 0) {
+      for (int i = index; i >= 0; i = title.indexOf(q, i + 1)) {
+        if (!Character.isLetterOrDigit(title.charAt(i - 1))) {
+          return WORD_START_RANK;
+        }
+      }
+      return TITLE_RANK;
+    }
+    return toolTip.contains(q) ? TOOL_TIP_RANK : 0;
+  }
+
+  /* Scores a fuzzy match of the query as a subsequence, 0 for no match */
+  static int fuzzyScore(final String text, final String q) {
+    int score = 0;
+    int from = 0;
+    int previous = -2;
+    for (int i = 0; i < q.length(); i++) {
+      final int index = text.indexOf(q.charAt(i), from);
+      if (index < 0) {
+        return 0;
+      }
+      score += 1;
+      if (index == previous + 1) {
+        score += 3;
+      }
+      if ((index == 0) || !Character.isLetterOrDigit(text.charAt(index - 1))) {
+        score += 2;
+      }
+      previous = index;
+      from = index + 1;
+    }
+    return score;
+  }
+
+  private static void addMatch(final PriorityQueue<Match> best, final int maxResults, final int id, final int score,
+      final int length) {
+    if (best.size() < maxResults) {
+      best.add(new Match(id, score, length));
+    } else if (best.peek().isWorseThan(score, length, id)) {
+      best.poll();
+      best.add(new Match(id, score, length));
+    }
+  }
+
+  /**
+   * The texts of an index at some point in time. Searching a snapshot doesn't
+   * touch the index, so it can run off the event dispatch thread.
+   */
+  static final class Snapshot<T> {
+    private final Object[] tabs;
+    private final String[] titles;
+    private final String[] toolTips;
+
+    Snapshot(final Object[] tabs, final String[] titles, final String[] toolTips) {
+      this.tabs = tabs;
+      this.titles = titles;
+      this.toolTips = toolTips;
+    }
+
+    /**
+     * Returns at most <code>maxResults</code> tabs whose title, or else tool
+     * tip, contains the characters of the query in order, best matches first.
+     */
+    List<T> fuzzySearch(final String query, final int maxResults) {
+      final String q = normalize(query);
+      if (q.isEmpty() || (maxResults <= 0)) {
+        return Collections.emptyList();
+      }
+      final PriorityQueue<Match> best = new PriorityQueue<>(Math.min(maxResults, 64) + 1,
+          Collections.reverseOrder());
+      for (int id = 0; id < tabs.length; id++) {
+        if (tabs[id] == null) {
+          continue;
+        }
+        int score = fuzzyScore(titles[id], q) * 2;
+        if (score == 0) {
+          score = fuzzyScore(toolTips[id], q);
+        }
+        if (score > 0) {
+          addMatch(best, maxResults, id, score, titles[id].length());
+        }
+      }
+      return TabTitleIndex.<T> toTabs(tabs, best);
+    }
+  }
+
+  /* Ordered best first */
+  private static final class Match implements Comparable<Match> {
+    private final int id;
+    private final int score;
+    private final int length;
+
+    Match(final int id, final int score, final int length) {
+      this.id = id;
+      this.score = score;
+      this.length = length;
+    }
+
+    boolean isWorseThan(final int otherScore, final int otherLength, final int otherId) {
+      if (score != otherScore) {
+        return score < otherScore;
+      }
+      if (length != otherLength) {
+        return length > otherLength;
+      }
+      return id > otherId;
+    }
+
+    @Override
+    public int compareTo(final Match other) {
+      if (isWorseThan(other.score, other.length, other.id)) {
+        return 1;
+      }
+      return other.isWorseThan(score, length, id) ? -1 : 0;
+    }
+  }
+
+  /* Ids of the tabs containing an n-gram, or starting a word with it, in increasing order */
+  private static final class Postings {
+    private int[] ids = new int[4];
+    private int size = 0;
+
+    void add(final int id) {
+      if ((size > 0) && (ids[size - 1] == id)) {
+        return;
+      }
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+  }
+}
@@ -0,0 +1,1131 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * A tree of tabs which doesn't depend on Swing. It keeps the hierarchy, the
+ * levels and the collapsed state of the tabs, and notifies its listeners of
+ * every change with the rows that were affected.
+ *
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The model of a tree of tabs. Tabs are compared by identity. The rows of the
+ * tree are its tabs in depth first order; when collapsed children are hidden
+ * the descendants of collapsed tabs don't have rows.
+ * <p>
+ * Every node remembers the number of rows shown by its subtree, so finding the
+ * row of a tab only walks up its ancestors. The level of a node is stored
+ * relative to its parent, so moving a subtree doesn't touch its descendants;
+ * the absolute levels are cached, and the cache is dropped whenever a subtree
+ * changes level. The model is not thread safe.
+ * <p>
+ * The nodes are slots of parallel <code>int</code> arrays linking each node to
+ * its parent, its first and last children and its siblings, so the tree holds
+ * no object per tab besides the tab itself. The tabs are found from their
+ * slot through an open addressing table, and the slots of removed tabs are
+ * reused.
+ */
+public class TabTreeModel<T> {
+
+  private static final int NONE = -1;
+  private static final int ROOT = 0;
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final int FLAG_COLLAPSED = 1;
+  /* Temporary mark used while removing several subtrees */
+  private static final int FLAG_MARKED = 2;
+
+  private Object[] tabs = new Object[INITIAL_CAPACITY];
+  private int[] parents = new int[INITIAL_CAPACITY];
+  private int[] firstChildren = new int[INITIAL_CAPACITY];
+  private int[] lastChildren = new int[INITIAL_CAPACITY];
+  /* Also chains the free slots */
+  private int[] nextSiblings = new int[INITIAL_CAPACITY];
+  private int[] previousSiblings = new int[INITIAL_CAPACITY];
+  private int[] childCounts = new int[INITIAL_CAPACITY];
+  private int[] rowCounts = new int[INITIAL_CAPACITY];
+  /* Level minus the level of the parent minus one, only changed by setLevel() */
+  private int[] levelOffsets = new int[INITIAL_CAPACITY];
+  /* Cached levels, valid while the epoch of the node is the epoch of the model */
+  private int[] levels = new int[INITIAL_CAPACITY];
+  private int[] levelEpochs = new int[INITIAL_CAPACITY];
+  private int[] flags = new int[INITIAL_CAPACITY];
+
+  /* Slots past the limit have never been used */
+  private int slotLimit = ROOT + 1;
+  private int freeSlot = NONE;
+  private int size = 0;
+  private int levelEpoch = 0;
+  /* Incremented whenever children are linked or unlinked, for the cursors of the child lists */
+  private int structureCount = 0;
+
+  /* Open addressing table of the nodes, by identity of their tab; 0 marks an empty entry */
+  private int[] table = new int[INITIAL_CAPACITY * 2];
+
+  private final List<TabTreeModelListener<T>> listeners = new CopyOnWriteArrayList<>();
+  private boolean collapsedChildrenHidden = true;
+
+  public TabTreeModel() {
+    initNode(ROOT, null);
+  }
+
+  public void addTabTreeModelListener(final TabTreeModelListener<T> listener) {
+    listeners.add(listener);
+  }
+
+  public void removeTabTreeModelListener(final TabTreeModelListener<T> listener) {
+    listeners.remove(listener);
+  }
+
+  public boolean contains(final T tab) {
+    return findNode(tab) != NONE;
+  }
+
+  /**
+   * Returns the number of tabs in the tree, including the hidden ones.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the number of levels of the tree, 0 when it is empty.
+   */
+  public int getDepth() {
+    int maxLevel = -1;
+    for (int node = firstChildren[ROOT]; node != NONE; node = nextNode(node, ROOT, true)) {
+      maxLevel = Math.max(maxLevel, levelOf(node));
+    }
+    return maxLevel + 1;
+  }
+
+  /**
+   * Returns the number of tabs in the subtree of the tab, including the tab, or
+   * 0 if it isn't in the tree.
+   */
+  public int getSubtreeSize(final T tab) {
+    final int node = findNode(tab);
+    if (node == NONE) {
+      return 0;
+    }
+    int size = 0;
+    for (int n = node; n != NONE; n = nextNode(n, node, true)) {
+      size++;
+    }
+    return size;
+  }
+
+  public List<T> getRoots() {
+    return new ChildList(ROOT);
+  }
+
+  /**
+   * Returns the parent of the tab, or <code>null</code> for a root tab or a tab
+   * which isn't in the tree.
+   */
+  public T getParent(final T tab) {
+    final int node = findNode(tab);
+    return node == NONE ? null : tabOf(parents[node]);
+  }
+
+  /**
+   * Returns an unmodifiable view of the children of the tab, valid while the
+   * tab is in the tree. The children of <code>null</code> are the root tabs.
+   */
+  public List<T> getChildren(final T tab) {
+    final int node = tab == null ? ROOT : findNode(tab);
+    return node == NONE ? Collections.<T> emptyList() : new ChildList(node);
+  }
+
+  public int getChildCount(final T tab) {
+    final int node = tab == null ? ROOT : findNode(tab);
+    return node == NONE ? 0 : childCounts[node];
+  }
+
+  /**
+   * Returns the index of the tab among the children of its parent, or -1 if it
+   * isn't in the tree.
+   */
+  public int getIndexInParent(final T tab) {
+    final int node = findNode(tab);
+    return node == NONE ? -1 : indexInParent(node);
+  }
+
+  public int getLevel(final T tab) {
+    final int node = findNode(tab);
+    return node == NONE ? 0 : levelOf(node);
+  }
+
+  public boolean isCollapsed(final T tab) {
+    final int node = findNode(tab);
+    return (node != NONE) && isCollapsed(node);
+  }
+
+  public boolean isCollapsedChildrenHidden() {
+    return collapsedChildrenHidden;
+  }
+
+  /**
+   * Sets whether the descendants of collapsed tabs are left out of the rows.
+   * Since this changes all the rows, the listeners are told that the structure
+   * of the tree has changed.
+   */
+  public void setCollapsedChildrenHidden(final boolean hidden) {
+    if (this.collapsedChildrenHidden != hidden) {
+      this.collapsedChildrenHidden = hidden;
+      updateRowCounts(ROOT);
+      for (final TabTreeModelListener<T> listener : listeners) {
+        listener.treeStructureChanged(new TabTreeModelEvent<>(this, null, null, -1, -1, Collections.<T> emptyList()));
+      }
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if the tab has a row, that is, none of its
+   * ancestors hides its children.
+   */
+  public boolean isVisible(final T tab) {
+    final int node = findNode(tab);
+    return (node != NONE) && isVisible(node);
+  }
+
+  public int getRowCount() {
+    return rowCounts[ROOT] - 1;
+  }
+
+  /**
+   * Returns the row of the tab, or -1 if the tab isn't shown.
+   */
+  public int getRow(final T tab) {
+    final int node = findNode(tab);
+    return ((node == NONE) || !isVisible(node)) ? -1 : rowOf(node);
+  }
+
+  /**
+   * Returns the tab shown in the row just before the given tab, or
+   * <code>null</code> if it is shown in the first row.
+   */
+  public T getRowBefore(final T tab) {
+    final int node = getExistingNode(tab);
+    int before = previousSiblings[node];
+    if (before == NONE) {
+      return tabOf(parents[node]);
+    }
+    while (showsChildren(before) && (lastChildren[before] != NONE)) {
+      before = lastChildren[before];
+    }
+    return tabOf(before);
+  }
+
+  /**
+   * Returns all the rows, in order.
+   */
+  public List<T> getRows() {
+    final List<T> rows = new ArrayList<>(getRowCount());
+    collectDescendantRows(ROOT, rows);
+    return rows;
+  }
+
+  /**
+   * Returns all the rows, in order, and stores the level of each row in
+   * <code>levels</code>, which must hold at least {@link #getRowCount()}
+   * entries.
+   */
+  public List<T> getRows(final int[] levels) {
+    final List<T> rows = new ArrayList<>(getRowCount());
+    for (int n = firstChildren[ROOT]; n != NONE; n = nextNode(n, ROOT, showsChildren(n))) {
+      levels[rows.size()] = levelOf(n);
+      rows.add(tabOf(n));
+    }
+    return rows;
+  }
+
+  /**
+   * Returns the rows of the tab and its descendants, or an empty list if the
+   * tab isn't shown.
+   */
+  public List<T> getRows(final T tab) {
+    final int node = getExistingNode(tab);
+    final List<T> rows = new ArrayList<>(rowCounts[node]);
+    if (isVisible(node)) {
+      collectRows(node, rows);
+    }
+    return rows;
+  }
+
+  /**
+   * Inserts a tab as a child of the given parent, or as a root tab when the
+   * parent is <code>null</code>. An index of -1 appends the tab.
+   */
+  public void insert(final T parent, final int index, final T tab) {
+    if (tab == null) {
+      throw new IllegalArgumentException("Can't insert a null tab");
+    }
+    if (findNode(tab) != NONE) {
+      throw new IllegalArgumentException("Tab is already in the tree");
+    }
+    final int parentNode = getParentNode(parent);
+    final int childIndex = index < 0 ? childCounts[parentNode] : index;
+    checkChildIndex(parentNode, childIndex);
+    final int node = newNode(tab);
+    linkChild(parentNode, node, childAt(parentNode, childIndex));
+    if (showsChildren(parentNode)) {
+      addRowCount(parentNode, 1);
+    }
+
+    if (!listeners.isEmpty()) {
+      final TabTreeModelEvent<T> event = newEvent(node, childIndex, visibleRows(node));
+      for (final TabTreeModelListener<T> listener : listeners) {
+        listener.tabsInserted(event);
+      }
+    }
+  }
+
+  /**
+   * Inserts several subtrees at once. The tabs are given in depth first order,
+   * each with its level relative to the new children of the parent: the tabs
+   * at level 0 are inserted as consecutive children of the parent, starting at
+   * the given index, or at the end when the index is -1, and every other tab
+   * is a child of the closest preceding tab one level up. The collapsed flags
+   * are applied before the rows are computed. A single
+   * {@link TabTreeModelListener#tabsInserted(TabTreeModelEvent)} is fired per
+   * subtree. The arguments are all checked first, so a null tab, a tab already
+   * in the tree or a tab given twice leaves the tree unchanged.
+   */
+  public void insertTabs(final T parent, final int index, final List<T> tabs, final int[] levels,
+      final boolean[] collapsed) {
+    if ((levels.length < tabs.size()) || (collapsed.length < tabs.size())) {
+      throw new IllegalArgumentException("Missing levels or collapsed flags");
+    }
+    final Set<T> seen = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>(tabs.size()));
+    for (int i = 0; i < tabs.size(); i++) {
+      final T tab = tabs.get(i);
+      if (tab == null) {
+        throw new IllegalArgumentException("Can't insert a null tab");
+      }
+      if (findNode(tab) != NONE) {
+        throw new IllegalArgumentException("Tab is already in the tree");
+      }
+      if (!seen.add(tab)) {
+        throw new IllegalArgumentException("Tab " + i + " is given twice");
+      }
+      if ((levels[i] < 0) || (levels[i] > (i == 0 ? 0 : levels[i - 1] + 1))) {
+        throw new IllegalArgumentException("Invalid level " + levels[i] + " for tab " + i);
+      }
+    }
+    final int parentNode = getParentNode(parent);
+    final int firstChildIndex = index < 0 ? childCounts[parentNode] : index;
+    checkChildIndex(parentNode, firstChildIndex);
+
+    final int[] newNodes = new int[tabs.size()];
+    final int[] path = new int[tabs.size()];
+    int subtreeCount = 0;
+    for (int i = 0; i < tabs.size(); i++) {
+      final int level = levels[i];
+      final int node = newNode(tabs.get(i));
+      newNodes[i] = node;
+      if (collapsed[i]) {
+        flags[node] |= FLAG_COLLAPSED;
+      }
+      if (level == 0) {
+        subtreeCount++;
+      } else {
+        linkChild(path[level - 1], node, NONE);
+      }
+      path[level] = node;
+    }
+
+    /* The children follow their parent, so the rows are summed backwards */
+    for (int i = newNodes.length - 1; i >= 0; i--) {
+      final int node = newNodes[i];
+      if (showsChildren(node)) {
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+          rowCounts[node] += rowCounts[child];
+        }
+      }
+    }
+    final int[] subtrees = new int[subtreeCount];
+    final int next = childAt(parentNode, firstChildIndex);
+    int rowCount = 0;
+    for (int i = 0, s = 0; i < newNodes.length; i++) {
+      if (levels[i] == 0) {
+        final int subtree = newNodes[i];
+        subtrees[s++] = subtree;
+        linkChild(parentNode, subtree, next);
+        rowCount += rowCounts[subtree];
+      }
+    }
+    if (showsChildren(parentNode)) {
+      addRowCount(parentNode, rowCount);
+    }
+
+    if (!listeners.isEmpty()) {
+      for (int i = 0; i < subtrees.length; i++) {
+        final int subtree = subtrees[i];
+        final TabTreeModelEvent<T> event = newEvent(subtree, firstChildIndex + i, visibleRows(subtree));
+        for (final TabTreeModelListener<T> listener : listeners) {
+          listener.tabsInserted(event);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the tab from the tree. Its descendants stay in the tree: the first
+   * child takes the place of the removed tab and adopts the other children.
+   * The removed tab and the heir are expanded first, so that no descendant
+   * loses its row.
+   */
+  public void remove(final T tab) {
+    final int node = getExistingNode(tab);
+    if (firstChildren[node] != NONE) {
+      setCollapsed(node, false);
+      setCollapsed(firstChildren[node], false);
+    }
+
+    final int parentNode = parents[node];
+    final int childIndex = indexInParent(node);
+    final boolean visible = isVisible(node);
+    final int row = (visible && !listeners.isEmpty()) ? rowOf(node) : -1;
+    final int next = nextSiblings[node];
+    unlinkChild(node);
+    int heir = firstChildren[node];
+    if (heir != NONE) {
+      unlinkChild(heir);
+      while (firstChildren[node] != NONE) {
+        final int child = firstChildren[node];
+        unlinkChild(child);
+        linkChild(heir, child, NONE);
+        rowCounts[heir] += rowCounts[child];
+      }
+      linkChild(parentNode, heir, next);
+      /* The heir takes the level of the removed tab, and its own children move up a level */
+      levelOffsets[heir] = levelOffsets[node];
+      levelEpoch++;
+    }
+    freeNode(node);
+    if (showsChildren(parentNode)) {
+      addRowCount(parentNode, -1);
+    }
+
+    if (!listeners.isEmpty()) {
+      final List<T> rows = visible ? Collections.singletonList(tab) : Collections.<T> emptyList();
+      final TabTreeModelEvent<T> event = new TabTreeModelEvent<>(this, tab, tabOf(parentNode), childIndex, row, rows);
+      for (final TabTreeModelListener<T> listener : listeners) {
+        listener.tabsRemoved(event);
+      }
+      if (heir != NONE) {
+        fireTabsChanged(newEvent(heir, childIndex, visibleRows(heir)));
+      }
+    }
+  }
+
+  /**
+   * Removes the tab along with all its descendants, and returns the removed
+   * tabs.
+   */
+  public List<T> removeSubtree(final T tab) {
+    return removeSubtrees(Collections.singleton(tab));
+  }
+
+  /**
+   * Removes the tabs along with all their descendants, and returns the removed
+   * tabs. Tabs whose ancestor is also in the collection are removed with that
+   * ancestor. A single <code>tabsRemoved</code> event is fired for each removed
+   * subtree, carrying all its rows; the subtrees are removed from the last to
+   * the first, so that the rows of the remaining events are still valid.
+   */
+  public List<T> removeSubtrees(final Collection<T> tabs) {
+    final int[] subtreeRoots;
+    int subtreeCount = 0;
+    if (tabs.size() == 1) {
+      subtreeRoots = new int[] { getExistingNode(tabs.iterator().next()) };
+      subtreeCount = 1;
+    } else {
+      for (final T tab : tabs) {
+        getExistingNode(tab);
+      }
+      for (final T tab : tabs) {
+        flags[findNode(tab)] |= FLAG_MARKED;
+      }
+      // the topmost nodes of the collection, in depth-first order
+      subtreeRoots = new int[tabs.size()];
+      for (int n = firstChildren[ROOT]; n != NONE;) {
+        if ((flags[n] & FLAG_MARKED) != 0) {
+          subtreeRoots[subtreeCount++] = n;
+          n = nextNode(n, ROOT, false);
+        } else {
+          n = nextNode(n, ROOT, true);
+        }
+      }
+      for (final T tab : tabs) {
+        flags[findNode(tab)] &= ~FLAG_MARKED;
+      }
+    }
+
+    final List<T> removed = new ArrayList<>();
+    for (int i = subtreeCount - 1; i >= 0; i--) {
+      final int node = subtreeRoots[i];
+      final T tab = tabOf(node);
+      final int parentNode = parents[node];
+      final int childIndex = indexInParent(node);
+      final List<T> rows = listeners.isEmpty() ? Collections.<T> emptyList() : visibleRows(node);
+      final int row = rows.isEmpty() ? -1 : rowOf(node);
+      unlinkChild(node);
+      if (showsChildren(parentNode)) {
+        addRowCount(parentNode, -rowCounts[node]);
+      }
+
+      final int first = removed.size();
+      for (int n = node; n != NONE; n = nextNode(n, node, true)) {
+        removed.add(tabOf(n));
+      }
+      for (int j = first; j < removed.size(); j++) {
+        freeNode(findNode(removed.get(j)));
+      }
+
+      if (!listeners.isEmpty()) {
+        final TabTreeModelEvent<T> event = new TabTreeModelEvent<>(this, tab, tabOf(parentNode), childIndex, row, rows);
+        for (final TabTreeModelListener<T> listener : listeners) {
+          listener.tabsRemoved(event);
+        }
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * Moves the tab, along with its descendants, under a new parent. The index is
+   * the position of the tab among the children of the new parent after the
+   * move; -1 appends it.
+   */
+  public void move(final T tab, final T newParent, final int index) {
+    final int node = getExistingNode(tab);
+    final int newParentNode = getParentNode(newParent);
+    for (int ancestor = newParentNode; ancestor != ROOT; ancestor = parents[ancestor]) {
+      if (ancestor == node) {
+        throw new IllegalArgumentException("Can't move a tab into its own subtree");
+      }
+    }
+
+    final int oldParentNode = parents[node];
+    final int previousLevel = levelOf(node);
+    final int maxIndex = childCounts[newParentNode] - (oldParentNode == newParentNode ? 1 : 0);
+    if (index > maxIndex) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + maxIndex);
+    }
+    final List<T> previousRows = listeners.isEmpty() ? Collections.<T> emptyList() : visibleRows(node);
+    final int previousFirstRow = previousRows.isEmpty() ? -1 : rowOf(node);
+    unlinkChild(node);
+    if (showsChildren(oldParentNode)) {
+      addRowCount(oldParentNode, -rowCounts[node]);
+    }
+    final int childIndex = index < 0 ? childCounts[newParentNode] : index;
+    linkChild(newParentNode, node, childAt(newParentNode, childIndex));
+    if (showsChildren(newParentNode)) {
+      addRowCount(newParentNode, rowCounts[node]);
+    }
+    if ((levelOffsets[node] != 0) || (previousLevel != levelOf(newParentNode) + 1)) {
+      levelOffsets[node] = 0;
+      levelEpoch++;
+    }
+
+    if (!listeners.isEmpty()) {
+      final List<T> rows = visibleRows(node);
+      final TabTreeModelEvent<T> event = new TabTreeModelEvent<>(this, tab, tabOf(newParentNode), childIndex,
+          rows.isEmpty() ? -1 : rowOf(node), rows, tabOf(oldParentNode), previousFirstRow, previousRows);
+      for (final TabTreeModelListener<T> listener : listeners) {
+        listener.tabMoved(event);
+      }
+    }
+  }
+
+  /**
+   * Collapses or expands the tab. Only the state of this tab changes; the
+   * descendants keep their own state.
+   */
+  public void setCollapsed(final T tab, final boolean collapsed) {
+    setCollapsed(getExistingNode(tab), collapsed);
+  }
+
+  /**
+   * Collapses or expands the tab along with all its descendants. The rows that
+   * are hidden or shown are contiguous, so a single event is fired for the
+   * whole subtree. When an expanded tab has collapsed descendants, the rows to
+   * show are scattered; the tab is then collapsed first, and expanded along
+   * with its descendants in a second event.
+   */
+  public void setSubtreeCollapsed(final T tab, final boolean collapsed) {
+    final int node = getExistingNode(tab);
+    if (!collapsed && showsChildren(node) && hasHiddenDescendants(node)) {
+      setCollapsed(node, true);
+    }
+    final boolean rowsChange = !listeners.isEmpty() && collapsedChildrenHidden && (showsChildren(node) == collapsed)
+        && isVisible(node);
+    final List<T> rows = new ArrayList<>();
+    if (rowsChange && collapsed) {
+      collectDescendantRows(node, rows);
+    }
+
+    for (int n = node; n != NONE; n = nextNode(n, node, true)) {
+      if (collapsed) {
+        flags[n] |= FLAG_COLLAPSED;
+      } else {
+        flags[n] &= ~FLAG_COLLAPSED;
+      }
+    }
+    final int previousRowCount = rowCounts[node];
+    updateRowCounts(node);
+    if ((rowCounts[node] != previousRowCount) && showsChildren(parents[node])) {
+      addRowCount(parents[node], rowCounts[node] - previousRowCount);
+    }
+
+    if (!listeners.isEmpty()) {
+      if (rowsChange && !collapsed) {
+        collectDescendantRows(node, rows);
+      }
+      final TabTreeModelEvent<T> event = new TabTreeModelEvent<>(this, tab, tabOf(parents[node]), indexInParent(node),
+          rows.isEmpty() ? -1 : rowOf(node) + 1, rows);
+      for (final TabTreeModelListener<T> listener : listeners) {
+        if (collapsed) {
+          listener.tabCollapsed(event);
+        } else {
+          listener.tabExpanded(event);
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets the level of the tab, leaving the levels of its descendants alone.
+   */
+  public void setLevel(final T tab, final int level) {
+    final int node = getExistingNode(tab);
+    final int delta = level - levelOf(node);
+    levelOffsets[node] += delta;
+    levels[node] = level;
+    for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+      levelOffsets[child] -= delta;
+    }
+    if (!listeners.isEmpty()) {
+      final List<T> rows = isVisible(node) ? Collections.singletonList(tab) : Collections.<T> emptyList();
+      fireTabsChanged(newEvent(node, indexInParent(node), rows));
+    }
+  }
+
+  /**
+   * Sets the levels of the descendants of the tab, counting from the level of
+   * the tab.
+   */
+  public void updateLevels(final T tab) {
+    final int node = getExistingNode(tab);
+    for (int n = firstChildren[node]; n != NONE; n = nextNode(n, node, true)) {
+      levelOffsets[n] = 0;
+    }
+    levelEpoch++;
+    if (!listeners.isEmpty()) {
+      final List<T> rows = new ArrayList<>();
+      if (isVisible(node) && showsChildren(node)) {
+        collectDescendantRows(node, rows);
+      }
+      fireTabsChanged(new TabTreeModelEvent<>(this, tab, tabOf(parents[node]), indexInParent(node),
+          rows.isEmpty() ? -1 : rowOf(node) + 1, rows));
+    }
+  }
+
+  private void setCollapsed(final int node, final boolean collapsed) {
+    if (isCollapsed(node) == collapsed) {
+      return;
+    }
+    if (collapsed) {
+      flags[node] |= FLAG_COLLAPSED;
+    } else {
+      flags[node] &= ~FLAG_COLLAPSED;
+    }
+    if (collapsedChildrenHidden && (firstChildren[node] != NONE)) {
+      int rowCount = 1;
+      if (!collapsed) {
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+          rowCount += rowCounts[child];
+        }
+      }
+      addRowCount(node, rowCount - rowCounts[node]);
+    }
+
+    if (!listeners.isEmpty()) {
+      final List<T> rows = new ArrayList<>();
+      if (collapsedChildrenHidden && isVisible(node)) {
+        collectDescendantRows(node, rows);
+      }
+      final TabTreeModelEvent<T> event = new TabTreeModelEvent<>(this, tabOf(node), tabOf(parents[node]),
+          indexInParent(node), rows.isEmpty() ? -1 : rowOf(node) + 1, rows);
+      for (final TabTreeModelListener<T> listener : listeners) {
+        if (collapsed) {
+          listener.tabCollapsed(event);
+        } else {
+          listener.tabExpanded(event);
+        }
+      }
+    }
+  }
+
+  private void fireTabsChanged(final TabTreeModelEvent<T> event) {
+    for (final TabTreeModelListener<T> listener : listeners) {
+      listener.tabsChanged(event);
+    }
+  }
+
+  private boolean hasHiddenDescendants(final int node) {
+    for (int n = firstChildren[node]; n != NONE; n = nextNode(n, node, true)) {
+      if ((firstChildren[n] != NONE) && !showsChildren(n)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private TabTreeModelEvent<T> newEvent(final int node, final int childIndex, final List<T> rows) {
+    return new TabTreeModelEvent<>(this, tabOf(node), tabOf(parents[node]), childIndex, rows.isEmpty() ? -1
+        : rowOf(node), rows);
+  }
+
+  private int getExistingNode(final T tab) {
+    final int node = findNode(tab);
+    if (node == NONE) {
+      throw new IllegalArgumentException("Tab is not in the tree");
+    }
+    return node;
+  }
+
+  private int getParentNode(final T parent) {
+    return parent == null ? ROOT : getExistingNode(parent);
+  }
+
+  @SuppressWarnings("unchecked")
+  private T tabOf(final int node) {
+    return (T) tabs[node];
+  }
+
+  private boolean isCollapsed(final int node) {
+    return (flags[node] & FLAG_COLLAPSED) != 0;
+  }
+
+  private boolean showsChildren(final int node) {
+    return (node == ROOT) || !(collapsedChildrenHidden && isCollapsed(node));
+  }
+
+  private boolean isVisible(final int node) {
+    for (int ancestor = parents[node]; ancestor != ROOT; ancestor = parents[ancestor]) {
+      if (!showsChildren(ancestor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /* Adds to the row count of the node and of the ancestors that show it */
+  private void addRowCount(final int node, final int delta) {
+    for (int n = node;; n = parents[n]) {
+      rowCounts[n] += delta;
+      if ((n == ROOT) || !showsChildren(parents[n])) {
+        break;
+      }
+    }
+  }
+
+  /* Recomputes the row counts of the subtree of the node, its descendants first */
+  private void updateRowCounts(final int node) {
+    int count = 0;
+    for (int n = node; n != NONE; n = nextNode(n, node, true)) {
+      count++;
+    }
+    final int[] preOrder = new int[count];
+    count = 0;
+    for (int n = node; n != NONE; n = nextNode(n, node, true)) {
+      preOrder[count++] = n;
+    }
+    for (int i = count - 1; i >= 0; i--) {
+      final int n = preOrder[i];
+      rowCounts[n] = 1;
+      if (showsChildren(n)) {
+        for (int child = firstChildren[n]; child != NONE; child = nextSiblings[child]) {
+          rowCounts[n] += rowCounts[child];
+        }
+      }
+    }
+  }
+
+  /* The node must be visible */
+  private int rowOf(int node) {
+    int row = 0;
+    while (node != ROOT) {
+      row += rowOffset(node);
+      node = parents[node];
+      if (node != ROOT) {
+        row++;
+      }
+    }
+    return row;
+  }
+
+  /*
+   * Returns the number of rows shown by the siblings before the node. The
+   * siblings are walked from the node in both directions, so that tabs near
+   * the end of a long list are as cheap as the ones near the start.
+   */
+  private int rowOffset(final int node) {
+    int before = 0;
+    int after = 0;
+    int previous = previousSiblings[node];
+    int next = nextSiblings[node];
+    while (true) {
+      if (previous == NONE) {
+        return before;
+      }
+      if (next == NONE) {
+        return rowCounts[parents[node]] - 1 - rowCounts[node] - after;
+      }
+      before += rowCounts[previous];
+      after += rowCounts[next];
+      previous = previousSiblings[previous];
+      next = nextSiblings[next];
+    }
+  }
+
+  private List<T> visibleRows(final int node) {
+    if (!isVisible(node)) {
+      return Collections.emptyList();
+    }
+    final List<T> rows = new ArrayList<>(rowCounts[node]);
+    collectRows(node, rows);
+    return rows;
+  }
+
+  private void collectRows(final int node, final List<T> rows) {
+    rows.add(tabOf(node));
+    if (showsChildren(node)) {
+      collectDescendantRows(node, rows);
+    }
+  }
+
+  /* Collects the rows of the children, even if the node itself hides them */
+  private void collectDescendantRows(final int node, final List<T> rows) {
+    for (int n = firstChildren[node]; n != NONE; n = nextNode(n, node, showsChildren(n))) {
+      rows.add(tabOf(n));
+    }
+  }
+
+  /*
+   * Returns the node after the given one in depth first order, staying in the
+   * subtree of top, or NONE at the end of the subtree. The children of the
+   * node are skipped unless descend is true.
+   */
+  private int nextNode(int node, final int top, final boolean descend) {
+    if (descend && (firstChildren[node] != NONE)) {
+      return firstChildren[node];
+    }
+    while (node != top) {
+      if (nextSiblings[node] != NONE) {
+        return nextSiblings[node];
+      }
+      node = parents[node];
+    }
+    return NONE;
+  }
+
+  /* Returns the level of the node, first recomputing the stale cached levels of its ancestors */
+  private int levelOf(final int node) {
+    if (node == ROOT) {
+      return -1;
+    }
+    if (levelEpochs[node] == levelEpoch) {
+      return levels[node];
+    }
+    int n = node;
+    int sum = 0;
+    while ((n != ROOT) && (levelEpochs[n] != levelEpoch)) {
+      sum += 1 + levelOffsets[n];
+      n = parents[n];
+    }
+    final int level = (n == ROOT ? -1 : levels[n]) + sum;
+    int l = level;
+    for (n = node; (n != ROOT) && (levelEpochs[n] != levelEpoch); n = parents[n]) {
+      levels[n] = l;
+      levelEpochs[n] = levelEpoch;
+      l -= 1 + levelOffsets[n];
+    }
+    return level;
+  }
+
+  /* Returns the index of the node among its siblings, walking from it in both directions */
+  private int indexInParent(final int node) {
+    int index = 0;
+    int previous = previousSiblings[node];
+    int next = nextSiblings[node];
+    while (true) {
+      if (previous == NONE) {
+        return index;
+      }
+      if (next == NONE) {
+        return childCounts[parents[node]] - 1 - index;
+      }
+      index++;
+      previous = previousSiblings[previous];
+      next = nextSiblings[next];
+    }
+  }
+
+  /* Returns the child at the index, or NONE for the index just past the last child */
+  private int childAt(final int parent, final int index) {
+    final int count = childCounts[parent];
+    if (index >= count) {
+      return NONE;
+    }
+    int child;
+    if (index < count / 2) {
+      child = firstChildren[parent];
+      for (int i = 0; i < index; i++) {
+        child = nextSiblings[child];
+      }
+    } else {
+      child = lastChildren[parent];
+      for (int i = count - 1; i > index; i--) {
+        child = previousSiblings[child];
+      }
+    }
+    return child;
+  }
+
+  private void checkChildIndex(final int parent, final int index) {
+    if (index > childCounts[parent]) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + childCounts[parent]);
+    }
+  }
+
+  /* Links the node as a child of the parent, before the given child, or last for NONE */
+  private void linkChild(final int parent, final int node, final int next) {
+    final int previous = next == NONE ? lastChildren[parent] : previousSiblings[next];
+    parents[node] = parent;
+    previousSiblings[node] = previous;
+    nextSiblings[node] = next;
+    if (previous == NONE) {
+      firstChildren[parent] = node;
+    } else {
+      nextSiblings[previous] = node;
+    }
+    if (next == NONE) {
+      lastChildren[parent] = node;
+    } else {
+      previousSiblings[next] = node;
+    }
+    childCounts[parent]++;
+    structureCount++;
+  }
+
+  private void unlinkChild(final int node) {
+    final int parent = parents[node];
+    final int previous = previousSiblings[node];
+    final int next = nextSiblings[node];
+    if (previous == NONE) {
+      firstChildren[parent] = next;
+    } else {
+      nextSiblings[previous] = next;
+    }
+    if (next == NONE) {
+      lastChildren[parent] = previous;
+    } else {
+      previousSiblings[next] = previous;
+    }
+    childCounts[parent]--;
+    parents[node] = NONE;
+    previousSiblings[node] = NONE;
+    nextSiblings[node] = NONE;
+    structureCount++;
+  }
+
+  private int newNode(final T tab) {
+    final int node;
+    if (freeSlot != NONE) {
+      node = freeSlot;
+      freeSlot = nextSiblings[node];
+    } else {
+      if (slotLimit == tabs.length) {
+        grow();
+      }
+      node = slotLimit++;
+    }
+    initNode(node, tab);
+    if ((size + 1) * 2 > table.length) {
+      rehash(table.length * 2);
+    }
+    tableInsert(node);
+    size++;
+    return node;
+  }
+
+  private void initNode(final int node, final T tab) {
+    tabs[node] = tab;
+    parents[node] = NONE;
+    firstChildren[node] = NONE;
+    lastChildren[node] = NONE;
+    nextSiblings[node] = NONE;
+    previousSiblings[node] = NONE;
+    childCounts[node] = 0;
+    rowCounts[node] = 1;
+    levelOffsets[node] = 0;
+    levelEpochs[node] = levelEpoch - 1;
+    flags[node] = 0;
+  }
+
+  /* The node must be unlinked from its parent, and its children freed or moved */
+  private void freeNode(final int node) {
+    tableRemove(node);
+    tabs[node] = null;
+    nextSiblings[node] = freeSlot;
+    freeSlot = node;
+    size--;
+  }
+
+  private void grow() {
+    final int capacity = tabs.length * 2;
+    tabs = Arrays.copyOf(tabs, capacity);
+    parents = Arrays.copyOf(parents, capacity);
+    firstChildren = Arrays.copyOf(firstChildren, capacity);
+    lastChildren = Arrays.copyOf(lastChildren, capacity);
+    nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+    previousSiblings = Arrays.copyOf(previousSiblings, capacity);
+    childCounts = Arrays.copyOf(childCounts, capacity);
+    rowCounts = Arrays.copyOf(rowCounts, capacity);
+    levelOffsets = Arrays.copyOf(levelOffsets, capacity);
+    levels = Arrays.copyOf(levels, capacity);
+    levelEpochs = Arrays.copyOf(levelEpochs, capacity);
+    flags = Arrays.copyOf(flags, capacity);
+  }
+
+  private int findNode(final Object tab) {
+    if (tab == null) {
+      return NONE;
+    }
+    final int mask = table.length - 1;
+    for (int i = hash(tab) & mask;; i = (i + 1) & mask) {
+      final int node = table[i];
+      if (node == 0) {
+        return NONE;
+      }
+      if (tabs[node] == tab) {
+        return node;
+      }
+    }
+  }
+
+  private void tableInsert(final int node) {
+    final int mask = table.length - 1;
+    int i = hash(tabs[node]) & mask;
+    while (table[i] != 0) {
+      i = (i + 1) & mask;
+    }
+    table[i] = node;
+  }
+
+  /* Removes the entry of the node, shifting back the entries of its probe sequence */
+  private void tableRemove(final int node) {
+    final int mask = table.length - 1;
+    int i = hash(tabs[node]) & mask;
+    while (table[i] != node) {
+      i = (i + 1) & mask;
+    }
+    table[i] = 0;
+    for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+      final int home = hash(tabs[table[j]]) & mask;
+      /* The entry at j can fill the hole at i unless its home lies cyclically in (i, j] */
+      if (((j - home) & mask) >= ((j - i) & mask)) {
+        table[i] = table[j];
+        table[j] = 0;
+        i = j;
+      }
+    }
+  }
+
+  private void rehash(final int length) {
+    table = new int[length];
+    for (int node = ROOT + 1; node < slotLimit; node++) {
+      if (tabs[node] != null) {
+        tableInsert(node);
+      }
+    }
+  }
+
+  private static int hash(final Object tab) {
+    final int h = System.identityHashCode(tab) * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /*
+   * Live view of the children of a node. A cursor remembers the last child
+   * found, so walking the list in order costs a step per child.
+   */
+  private final class ChildList extends AbstractList<T> {
+    private final int parent;
+    private int cursorIndex = -1;
+    private int cursorNode = NONE;
+    private int cursorStructureCount;
+
+    ChildList(final int parent) {
+      this.parent = parent;
+    }
+
+    @Override
+    public T get(final int index) {
+      final int count = childCounts[parent];
+      if ((index < 0) || (index >= count)) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+      }
+      if ((cursorIndex < 0) || (cursorStructureCount != structureCount)
+          || (Math.abs(index - cursorIndex) > Math.min(index, count - 1 - index))) {
+        cursorNode = childAt(parent, index);
+      } else {
+        int node = cursorNode;
+        for (int i = cursorIndex; i < index; i++) {
+          node = nextSiblings[node];
+        }
+        for (int i = cursorIndex; i > index; i--) {
+          node = previousSiblings[node];
+        }
+        cursorNode = node;
+      }
+      cursorIndex = index;
+      cursorStructureCount = structureCount;
+      return tabOf(cursorNode);
+    }
+
+    @Override
+    public int size() {
+      return childCounts[parent];
+    }
+  }
+}
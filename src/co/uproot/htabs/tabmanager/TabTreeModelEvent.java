@@ -0,0 +1,132 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.List;
+
+/**
+ * Describes a change in a {@link TabTreeModel}. Rows are the positions of the
+ * tabs in the depth first order of the tree, skipping the descendants of
+ * collapsed tabs when the model hides them. The rows of a change are always
+ * contiguous, starting at {@link #getFirstRow()}.
+ */
+public class TabTreeModelEvent<T> extends EventObject {
+
+  private static final long serialVersionUID = 1L;
+
+  private final T tab;
+  private final T parentTab;
+  private final int childIndex;
+  private final int firstRow;
+  private final List<T> rows;
+  private final T previousParentTab;
+  private final int previousFirstRow;
+  private final List<T> previousRows;
+
+  public TabTreeModelEvent(final TabTreeModel<T> source, final T tab, final T parentTab, final int childIndex,
+      final int firstRow, final List<T> rows) {
+    this(source, tab, parentTab, childIndex, firstRow, rows, parentTab, firstRow, rows);
+  }
+
+  public TabTreeModelEvent(final TabTreeModel<T> source, final T tab, final T parentTab, final int childIndex,
+      final int firstRow, final List<T> rows, final T previousParentTab, final int previousFirstRow,
+      final List<T> previousRows) {
+    super(source);
+    this.tab = tab;
+    this.parentTab = parentTab;
+    this.childIndex = childIndex;
+    this.firstRow = firstRow;
+    this.rows = Collections.unmodifiableList(rows);
+    this.previousParentTab = previousParentTab;
+    this.previousFirstRow = previousFirstRow;
+    this.previousRows = Collections.unmodifiableList(previousRows);
+  }
+
+  @SuppressWarnings("unchecked")
+  public TabTreeModel<T> getModel() {
+    return (TabTreeModel<T>) getSource();
+  }
+
+  /**
+   * Returns the tab the change is about, or <code>null</code> for a change of
+   * the whole tree.
+   */
+  public T getTab() {
+    return tab;
+  }
+
+  /**
+   * Returns the parent of the tab, <code>null</code> for a root tab.
+   */
+  public T getParentTab() {
+    return parentTab;
+  }
+
+  /**
+   * Returns the index of the tab among the children of its parent. For a
+   * removed tab this is the index it had before the removal.
+   */
+  public int getChildIndex() {
+    return childIndex;
+  }
+
+  /**
+   * Returns the row of the first affected tab, or -1 if none of the affected
+   * tabs is shown.
+   */
+  public int getFirstRow() {
+    return firstRow;
+  }
+
+  /**
+   * Returns the affected tabs that are shown, in row order.
+   */
+  public List<T> getRows() {
+    return rows;
+  }
+
+  public int getRowCount() {
+    return rows.size();
+  }
+
+  /**
+   * Returns the parent of a moved tab before the move. For other changes this
+   * is the same as {@link #getParentTab()}.
+   */
+  public T getPreviousParentTab() {
+    return previousParentTab;
+  }
+
+  /**
+   * Returns the first row of a moved tab before the move. For other changes
+   * this is the same as {@link #getFirstRow()}.
+   */
+  public int getPreviousFirstRow() {
+    return previousFirstRow;
+  }
+
+  /**
+   * Returns the rows of a moved tab before the move. For other changes these
+   * are the same as {@link #getRows()}.
+   */
+  public List<T> getPreviousRows() {
+    return previousRows;
+  }
+
+}
@@ -0,0 +1,70 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.util.EventListener;
+
+/**
+ * Listens to the changes of a {@link TabTreeModel}. The events are fired after
+ * the model has been updated, and carry the rows that were affected, so that a
+ * view can apply the change incrementally.
+ */
+public interface TabTreeModelListener<T> extends EventListener {
+
+  /**
+   * Called after a tab has been inserted. The rows of the event are the tab and
+   * its visible descendants.
+   */
+  public void tabsInserted(TabTreeModelEvent<T> e);
+
+  /**
+   * Called after a tab, or a tab along with its descendants, has been removed.
+   * The rows of the event are the rows that are no longer shown.
+   */
+  public void tabsRemoved(TabTreeModelEvent<T> e);
+
+  /**
+   * Called after a tab has been moved, along with its descendants, to another
+   * parent or position.
+   */
+  public void tabMoved(TabTreeModelEvent<T> e);
+
+  /**
+   * Called after a tab, or a tab along with its descendants, has been
+   * collapsed. The rows of the event are the descendants that were hidden.
+   */
+  public void tabCollapsed(TabTreeModelEvent<T> e);
+
+  /**
+   * Called after a tab, or a tab along with its descendants, has been
+   * expanded. The rows of the event are the descendants that became visible.
+   */
+  public void tabExpanded(TabTreeModelEvent<T> e);
+
+  /**
+   * Called after the level of one or more tabs has changed, without a change in
+   * the rows.
+   */
+  public void tabsChanged(TabTreeModelEvent<T> e);
+
+  /**
+   * Called after a change that affects the whole tree. Views are expected to
+   * reload all the rows.
+   */
+  public void treeStructureChanged(TabTreeModelEvent<T> e);
+
+}
@@ -0,0 +1,124 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Immutable description of a tab hierarchy,
+ * keyed by ids chosen by the application
+ *
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.Icon;
+
+/**
+ * The tab hierarchy an application wants a {@link TabManager} to show. Every
+ * node has a key which identifies its tab across snapshots, such as the id of
+ * the document shown by the tab. Keys are compared with <code>equals()</code>
+ * and must be unique within the snapshot. See
+ * {@link TabManager#reconcile(TreeSnapshot, TabReconcileHandler)}.
+ */
+public final class TreeSnapshot {
+
+  private final List<Node> roots;
+  private final int size;
+
+  public TreeSnapshot(final List<Node> roots) {
+    this.roots = Collections.unmodifiableList(new ArrayList<>(roots));
+    final Set<Object> keys = new HashSet<>();
+    final ArrayDeque<Node> stack = new ArrayDeque<>(this.roots);
+    while (!stack.isEmpty()) {
+      final Node node = stack.pop();
+      if (!keys.add(node.key)) {
+        throw new IllegalArgumentException("Duplicate key: " + node.key);
+      }
+      stack.addAll(node.children);
+    }
+    this.size = keys.size();
+  }
+
+  public List<Node> getRoots() {
+    return roots;
+  }
+
+  /**
+   * Returns the number of nodes in the snapshot.
+   */
+  public int size() {
+    return size;
+  }
+
+  public static final class Node {
+    private final Object key;
+    private final String title;
+    private final Icon icon;
+    private final String toolTip;
+    private final boolean collapsed;
+    private final List<Node> children;
+
+    public Node(final Object key, final String title, final Icon icon, final String toolTip, final boolean collapsed,
+        final List<Node> children) {
+      if (key == null) {
+        throw new IllegalArgumentException("Node key can't be null");
+      }
+      this.key = key;
+      this.title = title;
+      this.icon = icon;
+      this.toolTip = toolTip;
+      this.collapsed = collapsed;
+      this.children = Collections.unmodifiableList(new ArrayList<>(children));
+    }
+
+    public Node(final Object key, final String title, final List<Node> children) {
+      this(key, title, null, null, false, children);
+    }
+
+    public Node(final Object key, final String title) {
+      this(key, title, null, null, false, Collections.<Node> emptyList());
+    }
+
+    public Object getKey() {
+      return key;
+    }
+
+    public String getTitle() {
+      return title;
+    }
+
+    public Icon getIcon() {
+      return icon;
+    }
+
+    public String getToolTip() {
+      return toolTip;
+    }
+
+    public boolean isCollapsed() {
+      return collapsed;
+    }
+
+    public List<Node> getChildren() {
+      return children;
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Applies page plans to random pages and checks
+ * the result against the rows
+ *
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PagePlanTest {
+
+  private static final int INDENT_STEP = 7;
+
+  @Test
+  public void testRandomPages() {
+    final Random random = new Random(42);
+    for (int round = 0; round < 2000; round++) {
+      checkPlan(random, random.nextInt(round < 1000 ? 8 : 60));
+    }
+  }
+
+  @Test
+  public void testPagesInOrder() {
+    final List<Object> rows = newTabs(5);
+    final PagePlan<Object> plan = new PagePlan<>(rows, new int[5], new ArrayList<>(rows), managed(5, true),
+        INDENT_STEP, 0);
+    plan.compute();
+    assertEquals(0, plan.getRemovals().length);
+    assertEquals(0, plan.getInsertions().size());
+  }
+
+  @Test
+  public void testKeepLongestIncreasing() {
+    final Random random = new Random(7);
+    for (int round = 0; round < 2000; round++) {
+      final int count = random.nextInt(12);
+      final int[] values = new int[count + random.nextInt(3)];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = random.nextInt(10);
+      }
+      final boolean[] kept = PagePlan.keepLongestIncreasing(values, count);
+      int keptCount = 0;
+      int previous = Integer.MIN_VALUE;
+      for (int i = 0; i < count; i++) {
+        if (kept[i]) {
+          assertTrue("Not increasing", values[i] > previous);
+          previous = values[i];
+          keptCount++;
+        }
+      }
+      assertEquals(longestIncreasing(values, count), keptCount);
+    }
+  }
+
+  /* Builds random pages for random rows, applies the plan, and checks the pages */
+  private static void checkPlan(final Random random, final int rowCount) {
+    final List<Object> rows = newTabs(rowCount);
+    final int[] levels = new int[rowCount];
+    for (int i = 1; i < rowCount; i++) {
+      levels[i] = random.nextInt(levels[i - 1] + 2);
+    }
+    final List<Object> pages = new ArrayList<>();
+    final List<Boolean> managedPages = new ArrayList<>();
+    for (final Object row : rows) {
+      if (random.nextInt(4) != 0) {
+        pages.add(row);
+        managedPages.add(Boolean.TRUE);
+      }
+    }
+    Collections.shuffle(pages.subList(0, random.nextInt(pages.size() + 1)), random);
+    for (int i = random.nextInt(4); i > 0; i--) {
+      /* Unmanaged pages, managed pages without a tab, and pages of removed tabs */
+      final int kind = random.nextInt(3);
+      final int index = random.nextInt(pages.size() + 1);
+      pages.add(index, kind == 1 ? null : new Object());
+      managedPages.add(index, kind != 0);
+    }
+    final boolean[] managed = new boolean[pages.size()];
+    for (int i = 0; i < managed.length; i++) {
+      managed[i] = managedPages.get(i);
+    }
+
+    final PagePlan<Object> plan = new PagePlan<>(new ArrayList<>(rows), levels.clone(), new ArrayList<>(pages),
+        managed.clone(), INDENT_STEP, 0);
+    plan.compute();
+
+    /* Apply the plan the way the TabManager does, keeping the unmanaged pages alongside */
+    final List<Object> result = new ArrayList<>(pages);
+    final List<Boolean> resultManaged = new ArrayList<>(managedPages);
+    int previousRemoval = Integer.MAX_VALUE;
+    for (final int removal : plan.getRemovals()) {
+      assertTrue("Removals out of order", removal < previousRemoval);
+      assertTrue("Removed an unmanaged page", resultManaged.get(removal));
+      previousRemoval = removal;
+      result.remove(removal);
+      resultManaged.remove(removal);
+    }
+    final int[] insertionIndexes = plan.getInsertionIndexes();
+    assertEquals(insertionIndexes.length, plan.getInsertions().size());
+    for (int i = 0; i < insertionIndexes.length; i++) {
+      assertTrue("Insertions out of order", (i == 0) || (insertionIndexes[i] > insertionIndexes[i - 1]));
+      result.add(insertionIndexes[i], plan.getInsertions().get(i));
+      resultManaged.add(insertionIndexes[i], Boolean.TRUE);
+    }
+
+    final List<Object> managedResult = new ArrayList<>();
+    final List<Object> unmanagedResult = new ArrayList<>();
+    final int[] expectedIndents = new int[result.size()];
+    for (int i = 0; i < result.size(); i++) {
+      if (resultManaged.get(i)) {
+        expectedIndents[i] = levels[managedResult.size()] * INDENT_STEP;
+        managedResult.add(result.get(i));
+      } else {
+        expectedIndents[i] = -1;
+        unmanagedResult.add(result.get(i));
+      }
+    }
+    assertEquals(rows, managedResult);
+    assertEquals(unmanaged(pages, managed), unmanagedResult);
+    assertArrayEquals(expectedIndents, plan.getIndents());
+
+    /* Only the pages out of the longest run in row order are moved */
+    final int[] pageRows = new int[pages.size()];
+    int candidateCount = 0;
+    int stale = 0;
+    for (int i = 0; i < pages.size(); i++) {
+      final int row = indexOf(rows, pages.get(i));
+      if (managed[i] && (row >= 0)) {
+        pageRows[candidateCount++] = row;
+      } else if (managed[i]) {
+        stale++;
+      }
+    }
+    assertEquals(stale + candidateCount - longestIncreasing(pageRows, candidateCount), plan.getRemovals().length);
+  }
+
+  private static List<Object> newTabs(final int count) {
+    final List<Object> tabs = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      tabs.add(new Object());
+    }
+    return tabs;
+  }
+
+  private static boolean[] managed(final int count, final boolean value) {
+    final boolean[] managed = new boolean[count];
+    Arrays.fill(managed, value);
+    return managed;
+  }
+
+  private static List<Object> unmanaged(final List<Object> pages, final boolean[] managed) {
+    final List<Object> unmanaged = new ArrayList<>();
+    for (int i = 0; i < pages.size(); i++) {
+      if (!managed[i]) {
+        unmanaged.add(pages.get(i));
+      }
+    }
+    return unmanaged;
+  }
+
+  private static int indexOf(final List<Object> tabs, final Object tab) {
+    for (int i = 0; i < tabs.size(); i++) {
+      if ((tab != null) && (tabs.get(i) == tab)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /* Quadratic length of the longest strictly increasing subsequence */
+  private static int longestIncreasing(final int[] values, final int count) {
+    final int[] lengths = new int[count];
+    int longest = 0;
+    for (int i = 0; i < count; i++) {
+      lengths[i] = 1;
+      for (int j = 0; j < i; j++) {
+        if ((values[j] < values[i]) && (lengths[j] + 1 > lengths[i])) {
+          lengths[i] = lengths[j] + 1;
+        }
+      }
+      longest = Math.max(longest, lengths[i]);
+    }
+    return longest;
+  }
+}
@@ -0,0 +1,193 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Writes tab snapshots and reads them back
+ *
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TabSnapshotTest {
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    final Random random = new Random(42);
+    for (int round = 0; round < 50; round++) {
+      final List<Record> records = randomForest(random, random.nextInt(200));
+      assertEquals(records, read(write(records)));
+    }
+  }
+
+  @Test
+  public void testNullsAndLargeValues() throws IOException {
+    final byte[] payload = new byte[100000];
+    new Random(7).nextBytes(payload);
+    final char[] longTitle = new char[20000];
+    Arrays.fill(longTitle, '\u0939');
+    final List<Record> records = Arrays.asList(
+        new Record(0, 2, null, null, true, false, null),
+        new Record(1, 0, "", "", false, true, new byte[0]),
+        new Record(1, 0, new String(longTitle), "\u20ac \ud83d\ude00", false, false, payload));
+    assertEquals(records, read(write(records)));
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    assertEquals(new ArrayList<Record>(), read(write(new ArrayList<Record>())));
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    final byte[] bytes = write(randomForest(new Random(3), 20));
+    for (int length = 0; length < bytes.length; length++) {
+      try {
+        read(Arrays.copyOf(bytes, length));
+        throw new AssertionError("Read a snapshot truncated to " + length + " of " + bytes.length + " bytes");
+      } catch (final EOFException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotASnapshot() throws IOException {
+    new TabSnapshotReader(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7 })).readHeader();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testMissingTabs() throws IOException {
+    final TabSnapshotWriter writer = new TabSnapshotWriter(new ByteArrayOutputStream());
+    writer.writeHeader(2);
+    writer.writeTab("a", null, false, false, 0, null);
+    writer.finish();
+  }
+
+  private static byte[] write(final List<Record> records) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final TabSnapshotWriter writer = new TabSnapshotWriter(bytes);
+    writer.writeHeader(records.size());
+    for (final Record r : records) {
+      writer.writeTab(r.title, r.toolTip, r.collapsed, r.selected, r.childCount, r.payload);
+    }
+    writer.finish();
+    return bytes.toByteArray();
+  }
+
+  private static List<Record> read(final byte[] bytes) throws IOException {
+    final TabSnapshotReader reader = new TabSnapshotReader(new ByteArrayInputStream(bytes));
+    final int count = reader.readHeader();
+    final List<Record> records = new ArrayList<>();
+    while (reader.next()) {
+      records.add(new Record(reader.getLevel(), reader.getChildCount(), reader.getTitle(), reader.getToolTip(),
+          reader.isCollapsed(), reader.isSelected(), reader.getPayload()));
+    }
+    assertEquals(count, records.size());
+    return records;
+  }
+
+  /* The records of a random forest of the given size, in depth first order */
+  private static List<Record> randomForest(final Random random, final int size) {
+    final List<Record> records = new ArrayList<>(size);
+    addSubtrees(random, records, 0, size);
+    return records;
+  }
+
+  private static void addSubtrees(final Random random, final List<Record> records, final int level, int size) {
+    while (size > 0) {
+      final int subtreeSize = 1 + random.nextInt(size);
+      final int index = records.size();
+      records.add(null);
+      final int childrenSize = subtreeSize - 1;
+      final int before = records.size();
+      addSubtrees(random, records, level + 1, childrenSize);
+      int childCount = 0;
+      for (int i = before; i < records.size(); i++) {
+        if (records.get(i).level == level + 1) {
+          childCount++;
+        }
+      }
+      final byte[] payload = random.nextInt(4) == 0 ? null : new byte[random.nextInt(20)];
+      if (payload != null) {
+        random.nextBytes(payload);
+      }
+      records.set(index, new Record(level, childCount, random.nextInt(8) == 0 ? null : "Tab " + index,
+          random.nextBoolean() ? null : "http://example.com/" + random.nextInt(), random.nextBoolean(),
+          random.nextInt(10) == 0, payload));
+      size -= subtreeSize;
+    }
+  }
+
+  private static final class Record {
+    private final int level;
+    private final int childCount;
+    private final String title;
+    private final String toolTip;
+    private final boolean collapsed;
+    private final boolean selected;
+    private final byte[] payload;
+
+    Record(final int level, final int childCount, final String title, final String toolTip, final boolean collapsed,
+        final boolean selected, final byte[] payload) {
+      this.level = level;
+      this.childCount = childCount;
+      this.title = title;
+      this.toolTip = toolTip;
+      this.collapsed = collapsed;
+      this.selected = selected;
+      this.payload = payload;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof Record)) {
+        return false;
+      }
+      final Record r = (Record) o;
+      return (level == r.level) && (childCount == r.childCount) && equal(title, r.title)
+          && equal(toolTip, r.toolTip) && (collapsed == r.collapsed) && (selected == r.selected)
+          && Arrays.equals(payload, r.payload);
+    }
+
+    @Override
+    public int hashCode() {
+      return (level * 31) + childCount;
+    }
+
+    @Override
+    public String toString() {
+      return level + "/" + childCount + " " + title + " " + toolTip + " " + collapsed + " " + selected + " "
+          + Arrays.toString(payload);
+    }
+
+    private static boolean equal(final Object a, final Object b) {
+      return a == null ? b == null : a.equals(b);
+    }
+  }
+}
@@ -0,0 +1,188 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Compares the searches of the title index
+ * with a scan of all the titles
+ *
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TabTitleIndexTest {
+
+  private static final String[] WORDS = { "Mail", "inbox", "news", "Maps", "search", "box", "x", "a-b", "ab",
+      "Docs", "doc", "\u00c9t\u00e9", "\u0130" };
+
+  @Test
+  public void testSearchMatchesScan() {
+    final Random random = new Random(42);
+    final TabTitleIndex<Tab> index = new TabTitleIndex<>();
+    final List<Tab> tabs = new ArrayList<>();
+    int order = 0;
+    for (int step = 0; step < 3000; step++) {
+      final int op = random.nextInt(10);
+      if ((op < 5) || tabs.isEmpty()) {
+        final Tab tab = new Tab();
+        tabs.add(tab);
+        update(random, index, tab, order++);
+      } else if (op < 7) {
+        /* Changing the text gives the tab a new id, so it ranks as the newest */
+        update(random, index, tabs.get(random.nextInt(tabs.size())), order++);
+      } else if (op < 9) {
+        final Tab tab = tabs.remove(random.nextInt(tabs.size()));
+        index.remove(tab);
+      } else if (random.nextInt(20) == 0) {
+        index.clear();
+        tabs.clear();
+      }
+      assertEquals(tabs.size(), index.size());
+      if (step % 10 == 0) {
+        final String query = randomQuery(random);
+        for (final int maxResults : new int[] { 1, 3, 10, Integer.MAX_VALUE }) {
+          assertEquals(query + " " + maxResults, scan(tabs, query, maxResults), index.search(query, maxResults));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRanking() {
+    final TabTitleIndex<Tab> index = new TabTitleIndex<>();
+    final Tab inToolTip = put(index, "Inbox", "mail.example.com");
+    final Tab inWord = put(index, "Gmail", "");
+    final Tab atWordStart = put(index, "My mail", "");
+    final Tab atStart = put(index, "Mail - long title", "");
+    final Tab atStartShort = put(index, "Mail", "");
+    assertEquals(Arrays.asList(atStartShort, atStart, atWordStart, inWord, inToolTip), index.search("MAIL", 10));
+    assertEquals(Arrays.asList(atStartShort, atStart), index.search("mail", 2));
+    assertEquals(Collections.emptyList(), index.search("", 10));
+    assertEquals(Collections.emptyList(), index.search("zzz", 10));
+  }
+
+  @Test
+  public void testSnapshotIsUnchangedByIndex() {
+    final TabTitleIndex<Tab> index = new TabTitleIndex<>();
+    final Tab first = put(index, "Mail", "");
+    final TabTitleIndex.Snapshot<Tab> snapshot = index.snapshot();
+    put(index, "Mail too", "");
+    index.remove(first);
+    assertEquals(Collections.singletonList(first), snapshot.fuzzySearch("ml", 10));
+  }
+
+  private static Tab put(final TabTitleIndex<Tab> index, final String title, final String toolTip) {
+    final Tab tab = new Tab();
+    tab.title = title;
+    tab.toolTip = toolTip;
+    index.put(tab, title, toolTip);
+    return tab;
+  }
+
+  private static void update(final Random random, final TabTitleIndex<Tab> index, final Tab tab, final int order) {
+    tab.title = randomText(random);
+    tab.toolTip = random.nextInt(3) == 0 ? null : randomText(random);
+    tab.order = order;
+    index.put(tab, tab.title, tab.toolTip);
+  }
+
+  private static String randomText(final Random random) {
+    final StringBuilder text = new StringBuilder();
+    for (int i = random.nextInt(4); i > 0; i--) {
+      text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextBoolean() ? " " : "");
+    }
+    return text.toString();
+  }
+
+  private static String randomQuery(final Random random) {
+    final String text = randomText(random);
+    if (text.isEmpty() || (random.nextInt(5) == 0)) {
+      return WORDS[random.nextInt(WORDS.length)].toUpperCase(Locale.ROOT);
+    }
+    final int start = random.nextInt(text.length());
+    return text.substring(start, start + 1 + random.nextInt(Math.min(6, text.length() - start)));
+  }
+
+  /* The best matches of all the tabs, ranked as documented by the index */
+  private static List<Tab> scan(final List<Tab> tabs, final String query, final int maxResults) {
+    final String q = query.toLowerCase(Locale.ROOT);
+    final List<Tab> matches = new ArrayList<>();
+    for (final Tab tab : tabs) {
+      if (rank(tab, q) > 0) {
+        matches.add(tab);
+      }
+    }
+    Collections.sort(matches, new Comparator<Tab>() {
+      @Override
+      public int compare(final Tab a, final Tab b) {
+        final int ra = rank(a, q);
+        final int rb = rank(b, q);
+        if (ra != rb) {
+          return rb - ra;
+        }
+        /* The lengths are those of the lower case titles, which can differ */
+        final int la = a.title.toLowerCase(Locale.ROOT).length();
+        final int lb = b.title.toLowerCase(Locale.ROOT).length();
+        if (la != lb) {
+          return la - lb;
+        }
+        return a.order - b.order;
+      }
+    });
+    return matches.subList(0, Math.min(maxResults, matches.size()));
+  }
+
+  private static int rank(final Tab tab, final String q) {
+    if (q.isEmpty()) {
+      return 0;
+    }
+    final String title = tab.title.toLowerCase(Locale.ROOT);
+    if (title.startsWith(q)) {
+      return 4;
+    }
+    for (int i = title.indexOf(q); i > 0; i = title.indexOf(q, i + 1)) {
+      if (!Character.isLetterOrDigit(title.charAt(i - 1))) {
+        return 3;
+      }
+    }
+    if (title.contains(q)) {
+      return 2;
+    }
+    return (tab.toolTip != null) && tab.toolTip.toLowerCase(Locale.ROOT).contains(q) ? 1 : 0;
+  }
+
+  private static final class Tab {
+    private String title;
+    private String toolTip;
+    private int order;
+
+    @Override
+    public String toString() {
+      return title + " (" + toolTip + ")";
+    }
+  }
+}
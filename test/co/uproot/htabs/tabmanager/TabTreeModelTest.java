@@ -0,0 +1,311 @@
+/*
+   Copyright 2014 Uproot Labs India Pvt Ltd
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+/*
+ * Runs random edits on the tab tree model and on a
+ * plain tree of nodes, and compares their rows
+ *
+ */
+
+package co.uproot.htabs.tabmanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TabTreeModelTest {
+
+  @Test
+  public void testRandomEdits() {
+    final Random random = new Random(42);
+    for (int round = 0; round < 20; round++) {
+      final Checker checker = new Checker(random);
+      for (int step = 0; step < 400; step++) {
+        checker.randomEdit();
+        checker.check();
+      }
+    }
+  }
+
+  @Test
+  public void testInsertTabs() {
+    final TabTreeModel<Node> model = new TabTreeModel<>();
+    final List<Node> tabs = newNodes(5);
+    model.insertTabs(null, -1, tabs, new int[] { 0, 1, 2, 1, 0 }, new boolean[] { false, true, false, false, false });
+    assertEquals(5, model.size());
+    assertEquals(Arrays.asList(tabs.get(0), tabs.get(1), tabs.get(3), tabs.get(4)), model.getRows());
+    assertSame(tabs.get(1), model.getParent(tabs.get(2)));
+    assertEquals(2, model.getLevel(tabs.get(2)));
+    assertEquals(Arrays.asList(tabs.get(0), tabs.get(4)), model.getRoots());
+  }
+
+  @Test
+  public void testInsertTabsRejectsDuplicates() {
+    final TabTreeModel<Node> model = new TabTreeModel<>();
+    final List<Node> tabs = newNodes(3);
+    model.insert(null, -1, tabs.get(0));
+    final Node extra = new Node();
+    checkRejected(model, Arrays.asList(extra, tabs.get(1), extra), new int[] { 0, 1, 0 });
+    checkRejected(model, Arrays.asList(extra, tabs.get(0)), new int[] { 0, 1 });
+    checkRejected(model, Arrays.asList(extra, null), new int[] { 0, 0 });
+    checkRejected(model, Arrays.asList(extra, tabs.get(1)), new int[] { 0, 2 });
+    assertEquals(1, model.size());
+    assertEquals(Collections.singletonList(tabs.get(0)), model.getRows());
+  }
+
+  @Test
+  public void testRemoveKeepsChildren() {
+    final TabTreeModel<Node> model = new TabTreeModel<>();
+    final List<Node> tabs = newNodes(4);
+    model.insertTabs(null, -1, tabs, new int[] { 0, 1, 1, 2 }, new boolean[] { true, true, false, false });
+    assertEquals(1, model.getRowCount());
+    model.remove(tabs.get(0));
+    /* The first child takes the place of the removed tab and adopts its siblings */
+    assertEquals(Arrays.asList(tabs.get(1), tabs.get(2), tabs.get(3)), model.getRows());
+    assertSame(tabs.get(1), model.getParent(tabs.get(2)));
+    assertEquals(1, model.getLevel(tabs.get(2)));
+    assertEquals(2, model.getLevel(tabs.get(3)));
+  }
+
+  private static void checkRejected(final TabTreeModel<Node> model, final List<Node> tabs, final int[] levels) {
+    try {
+      model.insertTabs(null, -1, tabs, levels, new boolean[tabs.size()]);
+      throw new AssertionError("Inserted " + tabs);
+    } catch (final IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static List<Node> newNodes(final int count) {
+    final List<Node> nodes = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      nodes.add(new Node());
+    }
+    return nodes;
+  }
+
+  /* A tab of the model, and the node of the same tab in the reference tree */
+  private static final class Node {
+    private static int nextId = 0;
+
+    private final int id = nextId++;
+    private Node parent;
+    private final List<Node> children = new ArrayList<>();
+    private boolean collapsed;
+
+    @Override
+    public String toString() {
+      return "Tab " + id;
+    }
+  }
+
+  private static final class Checker {
+    private final Random random;
+    private final TabTreeModel<Node> model = new TabTreeModel<>();
+    private final Node root = new Node();
+    private final List<Node> tabs = new ArrayList<>();
+
+    Checker(final Random random) {
+      this.random = random;
+    }
+
+    void randomEdit() {
+      final int op = random.nextInt(tabs.size() < 5 ? 2 : 9);
+      if (op == 0) {
+        final Node parent = randomParent();
+        final int index = random.nextInt(parent.children.size() + 2) - 1;
+        final Node tab = new Node();
+        model.insert(parent == root ? null : parent, index, tab);
+        link(parent, index, tab);
+        tabs.add(tab);
+      } else if (op == 1) {
+        insertTabs();
+      } else if (op == 2) {
+        final Node tab = randomTab();
+        model.remove(tab);
+        remove(tab);
+      } else if (op == 3) {
+        final Node tab = randomTab();
+        final List<Node> removed = model.removeSubtree(tab);
+        final List<Node> expected = new ArrayList<>();
+        collectSubtree(tab, expected);
+        assertEquals(expected, removed);
+        unlink(tab);
+        tabs.removeAll(expected);
+      } else if (op == 4) {
+        final Node tab = randomTab();
+        final Node parent = randomParent();
+        if (isInSubtree(parent, tab)) {
+          return;
+        }
+        final int maxIndex = parent.children.size() - (parent == tab.parent ? 1 : 0);
+        final int index = random.nextInt(maxIndex + 2) - 1;
+        model.move(tab, parent == root ? null : parent, index);
+        unlink(tab);
+        link(parent, index, tab);
+      } else if (op < 7) {
+        final Node tab = randomTab();
+        final boolean collapsed = random.nextBoolean();
+        model.setCollapsed(tab, collapsed);
+        tab.collapsed = collapsed;
+      } else {
+        final Node tab = randomTab();
+        final boolean collapsed = random.nextBoolean();
+        model.setSubtreeCollapsed(tab, collapsed);
+        final List<Node> subtree = new ArrayList<>();
+        collectSubtree(tab, subtree);
+        for (final Node n : subtree) {
+          n.collapsed = collapsed;
+        }
+      }
+    }
+
+    void check() {
+      final List<Node> rows = new ArrayList<>();
+      final Map<Node, Integer> levels = new IdentityHashMap<>();
+      collectRows(root, -1, rows, levels);
+      assertEquals(tabs.size(), model.size());
+      assertEquals(rows.size(), model.getRowCount());
+      assertEquals(rows, model.getRows());
+      final int[] modelLevels = new int[rows.size()];
+      assertEquals(rows, model.getRows(modelLevels));
+      for (int i = 0; i < rows.size(); i++) {
+        final Node row = rows.get(i);
+        assertEquals(i, model.getRow(row));
+        assertEquals(levels.get(row).intValue(), modelLevels[i]);
+      }
+      for (final Node tab : tabs) {
+        assertTrue(model.contains(tab));
+        assertSame(tab.parent == root ? null : tab.parent, model.getParent(tab));
+        assertEquals(tab.children, model.getChildren(tab));
+        assertEquals(tab.collapsed, model.isCollapsed(tab));
+        assertEquals(levelOf(tab), model.getLevel(tab));
+        if (!levels.containsKey(tab)) {
+          assertEquals(-1, model.getRow(tab));
+        }
+      }
+    }
+
+    /* Inserts a random forest of new tabs in a single call */
+    private void insertTabs() {
+      final int count = 1 + random.nextInt(6);
+      final List<Node> inserted = newNodes(count);
+      final int[] levels = new int[count];
+      final boolean[] collapsed = new boolean[count];
+      for (int i = 0; i < count; i++) {
+        levels[i] = i == 0 ? 0 : random.nextInt(levels[i - 1] + 2);
+        collapsed[i] = random.nextInt(3) == 0;
+      }
+      final Node parent = randomParent();
+      final int index = random.nextInt(parent.children.size() + 2) - 1;
+      model.insertTabs(parent == root ? null : parent, index, inserted, levels, collapsed);
+
+      final Node[] path = new Node[count];
+      int childIndex = index < 0 ? parent.children.size() : index;
+      for (int i = 0; i < count; i++) {
+        final Node tab = inserted.get(i);
+        tab.collapsed = collapsed[i];
+        if (levels[i] == 0) {
+          link(parent, childIndex++, tab);
+        } else {
+          link(path[levels[i] - 1], -1, tab);
+        }
+        path[levels[i]] = tab;
+      }
+      tabs.addAll(inserted);
+    }
+
+    /* The first child takes the place of the tab and adopts the other children */
+    private void remove(final Node tab) {
+      final Node parent = tab.parent;
+      final int index = parent.children.indexOf(tab);
+      unlink(tab);
+      tabs.remove(tab);
+      if (!tab.children.isEmpty()) {
+        final Node heir = tab.children.remove(0);
+        heir.collapsed = false;
+        link(parent, index, heir);
+        for (final Node child : tab.children) {
+          link(heir, -1, child);
+        }
+        tab.children.clear();
+      }
+    }
+
+    private Node randomTab() {
+      return tabs.get(random.nextInt(tabs.size()));
+    }
+
+    private Node randomParent() {
+      return tabs.isEmpty() || (random.nextInt(4) == 0) ? root : randomTab();
+    }
+
+    private static void link(final Node parent, final int index, final Node tab) {
+      tab.parent = parent;
+      parent.children.add(index < 0 ? parent.children.size() : index, tab);
+    }
+
+    private static void unlink(final Node tab) {
+      tab.parent.children.remove(tab);
+      tab.parent = null;
+    }
+
+    private static boolean isInSubtree(Node node, final Node subtree) {
+      for (; node != null; node = node.parent) {
+        if (node == subtree) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static void collectSubtree(final Node node, final List<Node> nodes) {
+      nodes.add(node);
+      for (final Node child : node.children) {
+        collectSubtree(child, nodes);
+      }
+    }
+
+    private static void collectRows(final Node node, final int level, final List<Node> rows,
+        final Map<Node, Integer> levels) {
+      for (final Node child : node.children) {
+        rows.add(child);
+        levels.put(child, level + 1);
+        if (!child.collapsed) {
+          collectRows(child, level + 1, rows, levels);
+        }
+      }
+    }
+
+    private int levelOf(Node tab) {
+      int level = -1;
+      for (; tab != root; tab = tab.parent) {
+        level++;
+      }
+      return level;
+    }
+  }
+}